@@ -0,0 +1,642 @@
+package mini3;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Search engine for the number game of RecursionGame.  The values being
+ * combined are kept in an int array that is modified in place: combining
+ * the values in slots i and j stores the result in slot i and moves the
+ * last value into slot j, and backtracking undoes this.  Each combination
+ * is recorded as a node (left node, right node, operator), and text is only
+ * built from the nodes when a solution is found.
+ * <p>
+ * The rules are those of findCombinations, except that each unordered pair
+ * of values is combined only once with '+' and once with '*', so that
+ * a + b and b + a are not both reported.  The choices for the first
+ * combination are searched in parallel.
+ * <p>
+ * Solutions can either be collected into a list, or passed one at a time
+ * to a callback as they are found, in which case the search stops as soon
+ * as a limit is reached, the callback asks to stop, or cancel() is called.
+ * When there may be no exact solution, findClosest() looks for the nearest
+ * value within a time limit.
+ */
+public class ExpressionSolver
+{
+  /**
+   * Operators, indexed by operator code.  Codes 2 and 4 combine the values
+   * in slots i and j as (i op j), and codes 3 and 5 as (j op i).
+   */
+  private static final char[] OPS = {'+', '*', '-', '-', '/', '/'};
+
+  /**
+   * The given expressions, which are nodes 0 to n - 1.
+   */
+  private final IntExpression[] leaves;
+
+  /**
+   * Number of calls to cancel(); a search stops if this changes.
+   */
+  private volatile int cancellations;
+
+  /**
+   * Constructs a solver for the values in the given list.
+   * @param list
+   *   the values to be used in forming solutions
+   */
+  public ExpressionSolver(List<IntExpression> list)
+  {
+    leaves = list.toArray(new IntExpression[0]);
+  }
+
+  /**
+   * Lists the ways to obtain the given target, as strings in the form of
+   * IntExpression.toString().  Results found from the same first combination
+   * are in the order found, and results from different first combinations
+   * are in the order of those combinations.
+   * @param target
+   *   the target number to be obtained
+   * @return
+   *   list of solutions
+   */
+  public ArrayList<String> findCombinations(int target)
+  {
+    ArrayList<String> results = new ArrayList<String>();
+    Search root = new Search(target);
+    for (int i = 0; i < leaves.length; ++i)
+    {
+      if (root.values[i] == target)
+      {
+        results.add(root.text(i));
+      }
+    }
+    if (leaves.length < 2)
+    {
+      return results;
+    }
+
+    // each first combination (i, j, op) is a separate task
+    int pairs = leaves.length * (leaves.length - 1) / 2;
+    List<ArrayList<String>> parts = IntStream.range(0, pairs * OPS.length).parallel()
+        .mapToObj(choice -> new Search(target).runFrom(choice))
+        .collect(Collectors.toList());
+    for (ArrayList<String> part : parts)
+    {
+      results.addAll(part);
+    }
+    return results;
+  }
+
+  /**
+   * Passes each distinct way to obtain the given target to the callback as
+   * soon as it is found, until the limit is reached, the callback returns
+   * false, or cancel() is called.  Two solutions are the same if they differ
+   * only in the order of the operands of '+' and '*', or are found through
+   * different orders of combining.  The callback is called from the search
+   * threads, but never by two threads at once.
+   * @param target
+   *   the target number to be obtained
+   * @param limit
+   *   largest number of solutions to pass to the callback
+   * @param callback
+   *   receives each solution, returning false to stop the search
+   * @return
+   *   number of solutions passed to the callback
+   */
+  public int findCombinations(int target, int limit, Predicate<? super IntExpression> callback)
+  {
+    if (limit <= 0)
+    {
+      return 0;
+    }
+    CallbackSink sink = new CallbackSink(target, limit, callback);
+    search(target, sink);
+    return sink.delivered;
+  }
+
+  /**
+   * Returns an expression whose value is as close as possible to the given
+   * target, searching until an exact solution is found, the search is
+   * complete, the given time has passed, or cancel() is called.  Branches
+   * are skipped once it is known that they cannot beat the best expression
+   * found so far by any of the threads.  The given values themselves are
+   * always considered, so a result is returned however short the time.
+   * @param target
+   *   the target number to be approached
+   * @param timeoutMillis
+   *   time after which the best expression found so far is returned
+   * @return
+   *   closest expression found, or null if there are no values
+   */
+  public IntExpression findClosest(int target, long timeoutMillis)
+  {
+    // toNanos saturates instead of overflowing, and deadlines are compared
+    // by difference, so even Long.MAX_VALUE works as "no limit"
+    long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(timeoutMillis, 0));
+    NearestSink sink = new NearestSink(target, System.nanoTime() + nanos);
+    search(target, sink);
+    return sink.getBest();
+  }
+
+  /**
+   * Stops every search by findCombinations(int, int, Predicate) or
+   * findClosest that is in progress.  No further solutions are passed
+   * to their callbacks.
+   */
+  public void cancel()
+  {
+    ++cancellations;
+  }
+
+  /**
+   * Passes every value that can be formed to the given sink, searching
+   * the first combinations in parallel.
+   */
+  private void search(int target, Sink sink)
+  {
+    // the values are offered even if the search is already stopped,
+    // leaving it to the sink whether to take them
+    Search root = new Search(target, sink);
+    for (int i = 0; i < leaves.length; ++i)
+    {
+      sink.found(root, i, root.values[i]);
+    }
+    if (leaves.length >= 2)
+    {
+      int pairs = leaves.length * (leaves.length - 1) / 2;
+      IntStream.range(0, pairs * OPS.length).parallel()
+          .forEach(choice -> new Search(target, sink).runFrom(choice));
+    }
+  }
+
+  /**
+   * Destination of the values formed in a search, shared by the threads
+   * of the search.
+   */
+  private abstract class Sink
+  {
+    private final int startCancellations = cancellations;
+
+    /**
+     * Table in which expressions are built, so they share subexpressions.
+     */
+    protected final ExpressionTable table = new ExpressionTable();
+
+    protected volatile boolean stopped;
+
+    /**
+     * Returns whether the search should stop.
+     */
+    boolean isStopped()
+    {
+      return stopped || cancellations != startCancellations;
+    }
+
+    /**
+     * Called for each node of the search, with its value.
+     */
+    abstract void found(Search search, int node, int value);
+
+    /**
+     * Returns whether nothing formed from the first count of the given
+     * values can be of interest, so that they need not be combined further.
+     */
+    boolean prune(int[] values, int count)
+    {
+      return false;
+    }
+  }
+
+  /**
+   * Sink passing distinct solutions to a callback.
+   */
+  private class CallbackSink extends Sink
+  {
+    private final int target;
+    private final int limit;
+    private final Predicate<? super IntExpression> callback;
+
+    /**
+     * Canonical forms of the solutions found.
+     */
+    private final HashSet<String> seen = new HashSet<String>();
+
+    private int delivered;
+
+    CallbackSink(int target, int limit, Predicate<? super IntExpression> callback)
+    {
+      this.target = target;
+      this.limit = limit;
+      this.callback = callback;
+    }
+
+    @Override
+    void found(Search search, int node, int value)
+    {
+      if (value == target)
+      {
+        offer(search, node);
+      }
+    }
+
+    /**
+     * Passes the given node of the search to the callback unless it is
+     * a duplicate or the search is stopped.
+     */
+    private synchronized void offer(Search search, int node)
+    {
+      if (isStopped() || !seen.add(search.canonical(node)))
+      {
+        return;
+      }
+      ++delivered;
+      if (!callback.test(search.expression(node, table)) || delivered >= limit)
+      {
+        stopped = true;
+      }
+    }
+  }
+
+  /**
+   * Sink keeping the expression closest to the target.  The best distance
+   * is read by all threads without locking, to decide whether a value or
+   * a branch can improve on it.
+   */
+  private class NearestSink extends Sink
+  {
+    private final int target;
+    private final long deadline;
+    private final AtomicLong bestDistance = new AtomicLong(Long.MAX_VALUE);
+    private IntExpression best;
+
+    NearestSink(int target, long deadline)
+    {
+      this.target = target;
+      this.deadline = deadline;
+    }
+
+    synchronized IntExpression getBest()
+    {
+      return best;
+    }
+
+    @Override
+    boolean isStopped()
+    {
+      if (!stopped && System.nanoTime() - deadline > 0)
+      {
+        stopped = true;
+      }
+      return super.isStopped();
+    }
+
+    @Override
+    void found(Search search, int node, int value)
+    {
+      long distance = Math.abs((long) value - target);
+      if (distance < bestDistance.get())
+      {
+        improve(search, node, distance);
+      }
+    }
+
+    /**
+     * Records a closer expression.  This is done even after the deadline,
+     * since a closer result is never worse; the deadline only keeps the
+     * search from going deeper.
+     */
+    private synchronized void improve(Search search, int node, long distance)
+    {
+      if (distance < bestDistance.get())
+      {
+        best = search.expression(node, table);
+        bestDistance.set(distance);
+        if (distance == 0)
+        {
+          stopped = true;
+        }
+      }
+    }
+
+    /**
+     * Values formed from values v1, ..., vk have absolute value at most
+     * (|v1| + 1) * ... * (|vk| + 1) - 1, provided that bound fits in an int
+     * so that no arithmetic wraps around.  So if the target is further than
+     * the best distance beyond the bound, the values cannot do better.
+     */
+    @Override
+    boolean prune(int[] values, int count)
+    {
+      long bound = 1;
+      for (int i = 0; i < count; ++i)
+      {
+        bound *= Math.abs((long) values[i]) + 1;
+        if (bound > Integer.MAX_VALUE)
+        {
+          return false;
+        }
+      }
+      return Math.abs((long) target) - (bound - 1) >= bestDistance.get();
+    }
+  }
+
+  /**
+   * State of one depth-first search: the value stack and the nodes built
+   * along the current path.
+   */
+  private class Search
+  {
+    private final int target;
+    private final int n;
+
+    /**
+     * Current values; the first n - depth entries are in use.
+     */
+    private final int[] values;
+
+    /**
+     * Node for each entry of values.
+     */
+    private final int[] slots;
+
+    // nodes; the leaves are 0 to n - 1 and the node created at depth d is n + d
+    private final int[] nodeValues;
+    private final int[] left;
+    private final int[] right;
+    private final byte[] op;
+
+    // per-depth cursor: the pair of slots and the operator code tried last
+    private final int[] ci;
+    private final int[] cj;
+    private final int[] co;
+
+    /**
+     * Destination of solutions, or null to add their text to results.
+     */
+    private final Sink sink;
+    private final ArrayList<String> results = new ArrayList<String>();
+
+    Search(int target)
+    {
+      this(target, null);
+    }
+
+    Search(int target, Sink sink)
+    {
+      this.target = target;
+      this.sink = sink;
+      n = leaves.length;
+      values = new int[n];
+      slots = new int[n];
+      nodeValues = new int[2 * n];
+      for (int i = 0; i < n; ++i)
+      {
+        values[i] = leaves[i].getIntValue();
+        slots[i] = i;
+        nodeValues[i] = values[i];
+      }
+      left = new int[2 * n];
+      right = new int[2 * n];
+      op = new byte[2 * n];
+      ci = new int[n];
+      cj = new int[n];
+      co = new int[n];
+    }
+
+    /**
+     * Applies the given first combination and searches everything below it.
+     */
+    ArrayList<String> runFrom(int choice)
+    {
+      if (sink != null && sink.isStopped())
+      {
+        return results;
+      }
+      int code = choice % OPS.length;
+      int pair = choice / OPS.length;
+      int i = 0;
+      while (pair >= n - 1 - i)
+      {
+        pair -= n - 1 - i;
+        ++i;
+      }
+      int j = i + 1 + pair;
+      if (apply(0, i, j, code))
+      {
+        run(1);
+      }
+      return results;
+    }
+
+    /**
+     * Searches all combinations from the given depth, returning to it.
+     */
+    private void run(int base)
+    {
+      if (n - base < 2)
+      {
+        undo(base - 1);
+        return;
+      }
+      int d = base;
+      start(d);
+      int steps = 0;
+      while (true)
+      {
+        if (sink != null && (++steps & 0xff) == 0 && sink.isStopped())
+        {
+          return;
+        }
+        int m = n - d;
+        // advance the cursor at depth d
+        if (++co[d] == OPS.length)
+        {
+          co[d] = 0;
+          if (++cj[d] == m)
+          {
+            ++ci[d];
+            cj[d] = ci[d] + 1;
+          }
+        }
+        if (ci[d] >= m - 1)
+        {
+          // depth d is exhausted
+          undo(d - 1);
+          if (d == base)
+          {
+            return;
+          }
+          --d;
+          continue;
+        }
+        if (apply(d, ci[d], cj[d], co[d]))
+        {
+          if (m - 1 >= 2 && (sink == null || !sink.prune(values, m - 1)))
+          {
+            ++d;
+            start(d);
+          }
+          else
+          {
+            undo(d);
+          }
+        }
+      }
+    }
+
+    private void start(int d)
+    {
+      ci[d] = 0;
+      cj[d] = 1;
+      co[d] = -1;
+    }
+
+    /**
+     * Combines the values in slots i and j at depth d, reporting the
+     * result if it is the target.  Returns false, changing nothing, if
+     * the operator is not allowed for the values.
+     */
+    private boolean apply(int d, int i, int j, int code)
+    {
+      int a = values[i];
+      int b = values[j];
+      int result;
+      switch (code)
+      {
+        case 0:
+          result = a + b;
+          break;
+        case 1:
+          result = a * b;
+          break;
+        case 2:
+          result = a - b;
+          break;
+        case 3:
+          result = b - a;
+          break;
+        case 4:
+          if (b == 0 || a % b != 0)
+          {
+            return false;
+          }
+          result = a / b;
+          break;
+        default:
+          if (a == 0 || b % a != 0)
+          {
+            return false;
+          }
+          result = b / a;
+          break;
+      }
+      int node = n + d;
+      boolean swap = code == 3 || code == 5;
+      left[node] = swap ? slots[j] : slots[i];
+      right[node] = swap ? slots[i] : slots[j];
+      op[node] = (byte) code;
+      nodeValues[node] = result;
+      ci[d] = i;
+      cj[d] = j;
+      co[d] = code;
+
+      int last = n - d - 1;
+      values[i] = result;
+      slots[i] = node;
+      values[j] = values[last];
+      slots[j] = slots[last];
+      if (sink != null)
+      {
+        sink.found(this, node, result);
+      }
+      else if (result == target)
+      {
+        results.add(text(node));
+      }
+      return true;
+    }
+
+    /**
+     * Undoes the combination made at depth d.
+     */
+    private void undo(int d)
+    {
+      int node = n + d;
+      int i = ci[d];
+      int j = cj[d];
+      int last = n - d - 1;
+      boolean swap = co[d] == 3 || co[d] == 5;
+      values[last] = values[j];
+      slots[last] = slots[j];
+      slots[i] = swap ? right[node] : left[node];
+      slots[j] = swap ? left[node] : right[node];
+      values[i] = nodeValues[slots[i]];
+      values[j] = nodeValues[slots[j]];
+    }
+
+    /**
+     * Returns the text of a node in the form of IntExpression.toString().
+     */
+    String text(int node)
+    {
+      StringBuilder sb = new StringBuilder();
+      appendText(sb, node);
+      return sb.toString();
+    }
+
+    /**
+     * Returns a form of the text of a node that is the same for nodes
+     * differing only in the order of the operands of '+' and '*'.
+     */
+    String canonical(int node)
+    {
+      if (node < n)
+      {
+        return leaves[node].toString();
+      }
+      String a = canonical(left[node]);
+      String b = canonical(right[node]);
+      char c = OPS[op[node]];
+      if ((c == '+' || c == '*') && a.compareTo(b) > 0)
+      {
+        String t = a;
+        a = b;
+        b = t;
+      }
+      return "(" + a + " " + c + " " + b + ")";
+    }
+
+    /**
+     * Returns an IntExpression for a node, built in the given table.
+     */
+    IntExpression expression(int node, ExpressionTable table)
+    {
+      if (node < n)
+      {
+        return leaves[node];
+      }
+      return table.combine(expression(left[node], table), expression(right[node], table), OPS[op[node]]);
+    }
+
+    private void appendText(StringBuilder sb, int node)
+    {
+      if (node < n)
+      {
+        sb.append(leaves[node]);
+        return;
+      }
+      sb.append('(');
+      appendText(sb, left[node]);
+      sb.append(' ').append(OPS[op[node]]).append(' ');
+      appendText(sb, right[node]);
+      sb.append(')');
+    }
+  }
+}
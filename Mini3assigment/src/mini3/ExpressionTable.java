@@ -0,0 +1,111 @@
+package mini3;
+
+/**
+ * Hash-consing table for IntExpression objects.  Asking the table for an
+ * expression returns the one it already holds if there is an equal one, so
+ * structurally identical expressions built through the same table are the
+ * same object, and larger expressions share their common subexpressions
+ * instead of copying them.  Methods are synchronized, so a table can be
+ * shared between threads.
+ */
+public class ExpressionTable
+{
+  /**
+   * Expressions held, with open addressing; null for an empty slot.
+   */
+  private IntExpression[] table = new IntExpression[64];
+
+  private int size;
+
+  /**
+   * Returns the shared expression for an integer literal.
+   * @param v
+   *   integer value
+   * @return
+   *   expression for the literal
+   */
+  public synchronized IntExpression literal(int v)
+  {
+    int i = slot(Integer.hashCode(v));
+    for (IntExpression e = table[i]; e != null; e = table[i = next(i)])
+    {
+      if (e.getOperator() == 0 && e.getIntValue() == v)
+      {
+        return e;
+      }
+    }
+    return insert(i, new IntExpression(v));
+  }
+
+  /**
+   * Returns the shared expression combining the given expressions using
+   * the given operator, as constructed by IntExpression(e1, e2, op).
+   * @param e1
+   *   left hand side
+   * @param e2
+   *   right hand side
+   * @param op
+   *   operator with which to combine e1 and e2
+   * @return
+   *   expression for the combination
+   */
+  public synchronized IntExpression combine(IntExpression e1, IntExpression e2, char op)
+  {
+    int i = slot(IntExpression.combinedHash(e1.hashCode(), e2.hashCode(), op));
+    for (IntExpression e = table[i]; e != null; e = table[i = next(i)])
+    {
+      if (e.getOperator() == op && e.getLeft().equals(e1) && e.getRight().equals(e2))
+      {
+        return e;
+      }
+    }
+    return insert(i, new IntExpression(e1, e2, op));
+  }
+
+  /**
+   * Returns the number of distinct expressions in this table.
+   * @return
+   *   number of expressions
+   */
+  public synchronized int size()
+  {
+    return size;
+  }
+
+  /**
+   * Stores the expression in the given empty slot, growing the table
+   * if it is half full, and returns it.
+   */
+  private IntExpression insert(int i, IntExpression e)
+  {
+    table[i] = e;
+    if (++size * 2 > table.length)
+    {
+      IntExpression[] old = table;
+      table = new IntExpression[old.length * 2];
+      for (IntExpression x : old)
+      {
+        if (x != null)
+        {
+          int j = slot(x.hashCode());
+          while (table[j] != null)
+          {
+            j = next(j);
+          }
+          table[j] = x;
+        }
+      }
+    }
+    return e;
+  }
+
+  private int slot(int hash)
+  {
+    return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(table.length));
+  }
+
+  private int next(int i)
+  {
+    return (i + 1) & (table.length - 1);
+  }
+}
@@ -2,12 +2,41 @@ package mini3;
 
 /**
  * Encapsulates an integer value and a text representation of how
- * the value was obtained.
+ * the value was obtained.  An expression is a node referring to the
+ * expressions it was combined from, so subexpressions can be shared,
+ * for example by an ExpressionTable.  The text is only built when
+ * toString() is called.
  */
 public class IntExpression
 {
+  /**
+   * Buffer in which text is rendered, reused by each thread.
+   */
+  private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+  /**
+   * Largest buffer kept for reuse after rendering.
+   */
+  private static final int MAX_BUFFER = 1 << 16;
+
   private final int intValue;
-  private final String text;
+
+  /**
+   * Operands and operator, or null and zero for a literal.
+   */
+  private final IntExpression left;
+  private final IntExpression right;
+  private final char op;
+
+  /**
+   * Hash code, computed from those of the operands.
+   */
+  private final int hash;
+
+  /**
+   * Text representation, built on the first call to toString().
+   */
+  private String text;
   
   /**
    * Constructs an IntExpression of an integer literal.
@@ -17,7 +46,10 @@ public class IntExpression
   public IntExpression(int v)
   {
     intValue = v;
-    text = "" + v;
+    left = null;
+    right = null;
+    op = 0;
+    hash = Integer.hashCode(v);
   }
 
   /**
@@ -55,8 +87,11 @@ public class IntExpression
       throw new IllegalArgumentException("Operator must be one of '+', '*', '-', '/'");
     }
     
-    // finally, create a text representation of the combined expression
-    text = "(" + e1 + " " + op + " " + e2 + ")";
+    // keep the operands, the text is created when needed
+    left = e1;
+    right = e2;
+    this.op = op;
+    hash = combinedHash(e1.hash, e2.hash, op);
   }
   
   
@@ -71,14 +106,127 @@ public class IntExpression
   }
   
   /**
-   * Returns the text representation of this object.
+   * Returns the left hand side of this expression.
+   * @return
+   *   left hand side, or null if this is a literal
+   */
+  public IntExpression getLeft()
+  {
+    return left;
+  }
+
+  /**
+   * Returns the right hand side of this expression.
+   * @return
+   *   right hand side, or null if this is a literal
+   */
+  public IntExpression getRight()
+  {
+    return right;
+  }
+
+  /**
+   * Returns the operator of this expression.
+   * @return
+   *   one of '+', '-', '*', '/', or zero if this is a literal
+   */
+  public char getOperator()
+  {
+    return op;
+  }
+
+  /**
+   * Returns the text representation of this object.  The text is built
+   * on the first call, in a buffer reused by the calling thread, and kept.
    * @return  
    *    string representation of this object
    */
   @Override
   public String toString()
   {
-    return text;
+    String result = text;
+    if (result == null)
+    {
+      StringBuilder sb = BUFFER.get();
+      sb.setLength(0);
+      appendTo(sb);
+      result = sb.toString();
+      if (sb.capacity() > MAX_BUFFER)
+      {
+        BUFFER.remove();
+      }
+      text = result;
+    }
+    return result;
+  }
+
+  /**
+   * Appends the text representation of this object to the given builder,
+   * without keeping the text of this object or its operands.
+   * @param sb
+   *   builder to which the text is appended
+   */
+  public void appendTo(StringBuilder sb)
+  {
+    if (text != null)
+    {
+      sb.append(text);
+    }
+    else if (left == null)
+    {
+      sb.append(intValue);
+    }
+    else
+    {
+      sb.append('(');
+      left.appendTo(sb);
+      sb.append(' ').append(op).append(' ');
+      right.appendTo(sb);
+      sb.append(')');
+    }
+  }
+
+  /**
+   * Returns whether the given object is an IntExpression with the same
+   * structure: a literal with the same value, or the same operator applied
+   * to equal operands.
+   * @param obj
+   *   object to compare with
+   * @return
+   *   true if the expressions are equal
+   */
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (obj == this)
+    {
+      return true;
+    }
+    if (!(obj instanceof IntExpression))
+    {
+      return false;
+    }
+    IntExpression other = (IntExpression) obj;
+    if (hash != other.hash || op != other.op || intValue != other.intValue)
+    {
+      return false;
+    }
+    return left == null || (left.equals(other.left) && right.equals(other.right));
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return hash;
+  }
+
+  /**
+   * Returns the hash code of an expression combining operands with the
+   * given hash codes, as computed by the constructor.
+   */
+  static int combinedHash(int hash1, int hash2, char operator)
+  {
+    return (hash1 * 31 + hash2) * 31 + operator;
   }
   
 
@@ -0,0 +1,199 @@
+package mini3;
+
+/**
+ * Hash set of int values, each with a positive count of how many times it
+ * was added, stored in primitive arrays with open addressing.  A count of
+ * zero marks an empty slot, so no value needs to be reserved.  A bit array
+ * four times the size of the table, with a bit set for the hash of each
+ * value, lets most lookups of absent values return without probing.
+ */
+class IntMultiset
+{
+  private int[] keys;
+  private long[] counts;
+  private long[] filter;
+  private int size;
+  private int shift;
+
+  /**
+   * Constructs an empty multiset with room for about the given number of
+   * values before growing.
+   * @param expected
+   *   expected number of distinct values
+   */
+  IntMultiset(int expected)
+  {
+    int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+    keys = new int[capacity];
+    counts = new long[capacity];
+    filter = new long[Math.max(1, capacity >> 4)];
+    shift = 32 - Integer.numberOfTrailingZeros(capacity);
+  }
+
+  /**
+   * Adds the given value count times.
+   * @param key
+   *   value to add
+   * @param count
+   *   number of times to add it, positive
+   */
+  void add(int key, long count)
+  {
+    int i = slot(key);
+    if (counts[i] == 0)
+    {
+      keys[i] = key;
+      counts[i] = count;
+      int h = (key * 0x9E3779B9) >>> (shift - 2);
+      filter[h >>> 6] |= 1L << h;
+      if (++size * 2 > keys.length)
+      {
+        rehash();
+      }
+    }
+    else
+    {
+      counts[i] += count;
+    }
+  }
+
+  /**
+   * Returns the number of times the given value has been added.
+   * @param key
+   *   value to look for
+   * @return
+   *   count for the value, or zero if not present
+   */
+  long count(int key)
+  {
+    int h = (key * 0x9E3779B9) >>> (shift - 2);
+    if ((filter[h >>> 6] & (1L << h)) == 0)
+    {
+      return 0;
+    }
+    return counts[slot(key)];
+  }
+
+  /**
+   * Returns the slot holding the given value.
+   * @param key
+   *   value to look for
+   * @return
+   *   slot of the value, or -1 if not present
+   */
+  int find(int key)
+  {
+    int h = (key * 0x9E3779B9) >>> (shift - 2);
+    if ((filter[h >>> 6] & (1L << h)) == 0)
+    {
+      return -1;
+    }
+    int i = slot(key);
+    return counts[i] == 0 ? -1 : i;
+  }
+
+  /**
+   * Returns the number of distinct values.
+   * @return
+   *   number of values
+   */
+  int size()
+  {
+    return size;
+  }
+
+  /**
+   * Returns the distinct values in a new array, in the order of their
+   * slots.
+   * @return
+   *   array of the values
+   */
+  int[] toArray()
+  {
+    int[] result = new int[size];
+    int k = 0;
+    for (int i = 0; i < keys.length; ++i)
+    {
+      if (counts[i] != 0)
+      {
+        result[k++] = keys[i];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of slots in the table, for visiting every value
+   * with keyAt() and countAt().
+   * @return
+   *   number of slots
+   */
+  int capacity()
+  {
+    return keys.length;
+  }
+
+  /**
+   * Returns the value in the given slot, which is meaningful only if
+   * countAt() is not zero for the slot.
+   * @param slot
+   *   index less than capacity()
+   * @return
+   *   value in the slot
+   */
+  int keyAt(int slot)
+  {
+    return keys[slot];
+  }
+
+  /**
+   * Returns the count of the value in the given slot.
+   * @param slot
+   *   index less than capacity()
+   * @return
+   *   count in the slot, or zero if the slot is empty
+   */
+  long countAt(int slot)
+  {
+    return counts[slot];
+  }
+
+  /**
+   * Returns the slot holding the given value, or the empty slot where
+   * it would go.
+   */
+  private int slot(int key)
+  {
+    int mask = keys.length - 1;
+    int i = (key * 0x9E3779B9) >>> shift;
+    while (counts[i] != 0 && keys[i] != key)
+    {
+      i = (i + 1) & mask;
+    }
+    return i;
+  }
+
+  /**
+   * Doubles the table.
+   */
+  private void rehash()
+  {
+    int[] oldKeys = keys;
+    long[] oldCounts = counts;
+    keys = new int[oldKeys.length * 2];
+    counts = new long[oldKeys.length * 2];
+    filter = new long[Math.max(1, keys.length >> 4)];
+    --shift;
+    for (int i = 0; i < oldKeys.length; ++i)
+    {
+      if (oldCounts[i] != 0)
+      {
+        int j = slot(oldKeys[i]);
+        keys[j] = oldKeys[i];
+        counts[j] = oldCounts[i];
+        int h = (oldKeys[i] * 0x9E3779B9) >>> (shift - 2);
+        filter[h >>> 6] |= 1L << h;
+      }
+    }
+  }
+}
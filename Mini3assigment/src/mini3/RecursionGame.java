@@ -2,6 +2,7 @@ package mini3;
 
 
 import java.util.ArrayList;
+import java.util.function.Predicate;
 
 /**
  * Implementation of a search for solutions to a number game inspired
@@ -142,5 +143,26 @@ public class RecursionGame
     }
   } 
 
-
+  /**
+   * Passes distinct ways to obtain the given target number to the given
+   * callback as they are found, stopping as soon as the limit is reached
+   * or the callback returns false.  Solutions differing only in the order
+   * of the operands of '+' or '*' are passed only once.  The search runs
+   * on several threads, but the callback is not called by two at once.
+   * See ExpressionSolver.
+   * @param list
+   *   the values to be used in forming solutions
+   * @param target
+   *   the target number to be obtained from the values in the list
+   * @param limit
+   *   largest number of solutions to pass to the callback
+   * @param callback
+   *   receives each solution, returning false to stop the search
+   * @return
+   *   number of solutions passed to the callback
+   */
+  public static int findCombinations(ArrayList<IntExpression> list, int target, int limit, Predicate<? super IntExpression> callback)
+  {
+    return new ExpressionSolver(list).findCombinations(target, limit, callback);
+  }
 }
\ No newline at end of file
@@ -0,0 +1,1168 @@
+package mini3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Dynamic programming solver for the number game of RecursionGame.  For each
+ * subset of the given values, represented as a bitmask, it counts the ways to
+ * obtain a value using each value of the subset exactly once.
+ * <p>
+ * The values obtainable from small subsets are kept in primitive hash sets,
+ * together with the number of ways to obtain each.  They are built bottom-up,
+ * the subsets of each size in parallel: the set for a subset is obtained by
+ * combining the values of every split of it into two disjoint nonempty
+ * subsets.  Sets are built in advance for the subsets of up to half of the
+ * values, and for larger subsets as long as building them stays cheap.
+ * <p>
+ * The other subsets are asked only for the values a query needs.  Every split
+ * of such a subset has a part whose set is built, and for each value x of
+ * that part, the values completing x to the one asked for are needed from the
+ * other part.  A query first collects the values needed from each subset,
+ * from the largest subsets down, rejecting at once any value beyond the
+ * largest one the subset can reach.  It then answers them from the smallest
+ * subsets up, all the values of a subset together: for a split whose parts
+ * both have sets, by combining their values and keeping the results that are
+ * needed, and otherwise by looking up the completing values.  The answers are
+ * kept, so one solver can answer queries for many targets.  The set for a
+ * larger subset is built only when a query needs all of its values, for
+ * example to count the ways of multiplying zero by it.
+ * <p>
+ * A way is a distinct expression tree, where a + b and b + a are the same
+ * expression, as are a * b and b * a.  Equal values at different positions
+ * in the list are counted as different values.  Text is built only for
+ * expressions that are asked for.
+ */
+public class SubsetSolver
+{
+  /**
+   * Largest number of values supported.
+   */
+  public static final int MAX_VALUES = 20;
+
+  /**
+   * Default limit on the total number of values stored over all sets.
+   */
+  public static final long DEFAULT_MAX_ENTRIES = 20000000L;
+
+  /**
+   * Largest number of pairs of values combined in advance to build the sets
+   * for the subsets of one size larger than half of the values.
+   */
+  private static final long MAX_ADVANCE_PAIRS = 1 << 21;
+
+  /**
+   * Largest number of products looked up one by one in a subset whose set
+   * is not built; beyond this, the set is built and searched instead.
+   */
+  private static final int MAX_PRODUCT_LOOKUPS = 64;
+
+  /**
+   * Number of pairs of values that can be combined, counting the results
+   * needed in an array indexed by value, in about the time taken to look up
+   * the values completing one value for one value needed.  Counting them
+   * by slot in a set of the values needed takes about three times as long,
+   * so that then only as many pairs are combined as there would be lookups.
+   */
+  private static final int PAIRS_PER_LOOKUP = 3;
+
+  /**
+   * Largest difference between the values needed from a subset for which
+   * the ways are counted in an array indexed by value, if it is more than
+   * MAX_SPAN_PER_VALUE times the number of values.
+   */
+  private static final int MAX_SPAN = 1 << 16;
+
+  /**
+   * Largest average difference between consecutive values needed from a
+   * subset for which the ways are counted in an array indexed by value.
+   */
+  private static final int MAX_SPAN_PER_VALUE = 64;
+
+  /**
+   * The given expressions.
+   */
+  private final IntExpression[] leaves;
+
+  // values obtainable from each subset whose set has been built, with the
+  // number of ways to obtain each, and the total number of ways
+  private final IntMultiset[] sets;
+  private final long[] totals;
+
+  // for the other subsets, the values found by queries so far with their
+  // counts, and the values found not to be obtainable
+  private final IntMultiset[] found;
+  private final IntMultiset[] missing;
+
+  /**
+   * Values needed from each subset by the query being prepared, or null.
+   */
+  private final IntMultiset[] needed;
+
+  // values asked of each subset while collecting, with repeats, and how
+  // many; they are gathered into needed when the subset is collected
+  private final int[][] requests;
+  private final int[] requestCounts;
+
+  /**
+   * Whether values needed are being collected rather than answered.
+   */
+  private boolean collecting;
+
+  /**
+   * Bound on the magnitude of the values obtainable from each subset, or
+   * Long.MAX_VALUE if int arithmetic may wrap around.
+   */
+  private final long[] bounds;
+
+  /**
+   * Limit on the total number of values stored, and the number stored so far.
+   */
+  private final long maxEntries;
+  private final AtomicLong entries = new AtomicLong();
+
+  /**
+   * Constructs a solver for the values in the given list and builds the
+   * sets for its small subsets, storing at most DEFAULT_MAX_ENTRIES values.
+   * @param list
+   *   the values to be used in forming solutions
+   * @throws IllegalArgumentException
+   *   if the list has more than MAX_VALUES values, or the sets built in
+   *   advance have more values than can be stored
+   */
+  public SubsetSolver(List<IntExpression> list)
+  {
+    this(list, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Constructs a solver for the values in the given list and builds the
+   * sets for its small subsets, storing at most the given number of values
+   * over all sets.
+   * @param list
+   *   the values to be used in forming solutions
+   * @param maxEntries
+   *   limit on the total number of values stored
+   * @throws IllegalArgumentException
+   *   if the list has more than MAX_VALUES values, or the sets built in
+   *   advance have more than maxEntries values
+   */
+  public SubsetSolver(List<IntExpression> list, long maxEntries)
+  {
+    if (list.size() > MAX_VALUES)
+    {
+      throw new IllegalArgumentException("At most " + MAX_VALUES + " values are supported");
+    }
+    leaves = list.toArray(new IntExpression[0]);
+    this.maxEntries = maxEntries;
+    int n = leaves.length;
+    sets = new IntMultiset[1 << n];
+    totals = new long[1 << n];
+    found = new IntMultiset[1 << n];
+    missing = new IntMultiset[1 << n];
+    bounds = new long[1 << n];
+    needed = new IntMultiset[1 << n];
+    requests = new int[1 << n][];
+    requestCounts = new int[1 << n];
+
+    // no value of a subset exceeds the product of its values, taking
+    // each as at least 2, as long as that product fits in an int
+    for (int mask = 1; mask < bounds.length; ++mask)
+    {
+      int low = Integer.numberOfTrailingZeros(mask);
+      long bound = Math.max(Math.abs((long) leaves[low].getIntValue()), 2);
+      int rest = mask & (mask - 1);
+      if (rest != 0)
+      {
+        bound = bounds[rest] > Integer.MAX_VALUE ? Long.MAX_VALUE : bound * bounds[rest];
+      }
+      bounds[mask] = bound > Integer.MAX_VALUE ? Long.MAX_VALUE : bound;
+    }
+
+    for (int i = 0; i < n; ++i)
+    {
+      IntMultiset set = new IntMultiset(1);
+      set.add(leaves[i].getIntValue(), 1);
+      totals[1 << i] = 1;
+      sets[1 << i] = set;
+    }
+
+    // subsets of each size in parallel, from the sets of smaller ones; a
+    // split always has a part of at most half of the values, so those
+    // sizes are needed, and larger ones are built while it is cheap
+    try
+    {
+      for (int size = 2; size < n; ++size)
+      {
+        final int bits = size;
+        if (size > n / 2 && pairs(bits) > MAX_ADVANCE_PAIRS)
+        {
+          break;
+        }
+        IntStream.range(3, sets.length).parallel().filter(mask -> Integer.bitCount(mask) == bits)
+            .forEach(this::build);
+      }
+    }
+    catch (IllegalStateException e)
+    {
+      throw new IllegalArgumentException(e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the number of pairs of values combined in building the sets
+   * for all subsets of the given size, whose smaller subsets are done.
+   */
+  private long pairs(int size)
+  {
+    long total = 0;
+    for (int mask = 3; mask < sets.length; ++mask)
+    {
+      if (Integer.bitCount(mask) == size)
+      {
+        int low = mask & -mask;
+        int rest = mask ^ low;
+        for (int sub = rest; ; sub = (sub - 1) & rest)
+        {
+          if (sub != rest)
+          {
+            int a = low | sub;
+            total += (long) sets[a].size() * sets[mask ^ a].size();
+          }
+          if (sub == 0)
+          {
+            break;
+          }
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Builds the set for the given subset, building first the sets it is
+   * combined from if needed.
+   * @throws IllegalStateException
+   *   if the sets would have more than maxEntries values in all
+   */
+  private void build(int mask)
+  {
+    IntMultiset result = new IntMultiset(16);
+    int low = mask & -mask;
+    int rest = mask ^ low;
+
+    // splits (a, b) with the lowest element in a, so each pair once
+    for (int sub = rest; ; sub = (sub - 1) & rest)
+    {
+      if (sub != rest)
+      {
+        int a = low | sub;
+        int b = mask ^ a;
+        ensureBuilt(a);
+        ensureBuilt(b);
+        combine(a, b, result);
+        if (entries.get() + result.size() > maxEntries)
+        {
+          throw new IllegalStateException("The values give more than " + maxEntries + " intermediate results");
+        }
+      }
+      if (sub == 0)
+      {
+        break;
+      }
+    }
+
+    long total = 0;
+    for (int i = 0; i < result.capacity(); ++i)
+    {
+      total += result.countAt(i);
+    }
+    entries.addAndGet(result.size());
+    totals[mask] = total;
+    sets[mask] = result;
+    found[mask] = null;
+    missing[mask] = null;
+  }
+
+  private void ensureBuilt(int mask)
+  {
+    if (sets[mask] == null)
+    {
+      build(mask);
+    }
+  }
+
+  /**
+   * Returns whether the target can be obtained from some subset of the values.
+   * @param target
+   *   the target number to be obtained
+   * @return
+   *   true if the target can be obtained
+   * @throws IllegalStateException
+   *   if a set the query needs would exceed the limit on stored values
+   */
+  public synchronized boolean isReachable(int target)
+  {
+    for (int mask = 1; mask < sets.length; ++mask)
+    {
+      if (sets[mask] != null && sets[mask].count(target) != 0)
+      {
+        return true;
+      }
+    }
+    prepare(target);
+    for (int mask = 1; mask < sets.length; ++mask)
+    {
+      if (count(mask, target) != 0)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the number of distinct expressions, over all subsets of the
+   * values, whose value is the target.  The count wraps around if it
+   * does not fit in a long.
+   * @param target
+   *   the target number to be obtained
+   * @return
+   *   number of ways to obtain the target
+   * @throws IllegalStateException
+   *   if a set the query needs would exceed the limit on stored values
+   */
+  public synchronized long countWays(int target)
+  {
+    prepare(target);
+    long total = 0;
+    for (int mask = 1; mask < sets.length; ++mask)
+    {
+      total += count(mask, target);
+    }
+    return total;
+  }
+
+  /**
+   * Returns one expression for the target, using as few values as possible.
+   * @param target
+   *   the target number to be obtained
+   * @return
+   *   expression in the form of IntExpression.toString(), or null if the
+   *   target cannot be obtained
+   * @throws IllegalStateException
+   *   if a set the query needs would exceed the limit on stored values
+   */
+  public synchronized String findExpression(int target)
+  {
+    String best = null;
+    int bestCount = Integer.MAX_VALUE;
+    boolean prepared = false;
+    for (int mask = 1; mask < sets.length; ++mask)
+    {
+      if (Integer.bitCount(mask) < bestCount)
+      {
+        if (sets[mask] == null && !prepared)
+        {
+          prepare(target);
+          prepared = true;
+        }
+        if (count(mask, target) != 0)
+        {
+          best = expression(mask, target);
+          bestCount = Integer.bitCount(mask);
+        }
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Returns one expression for the target for each subset of the values
+   * from which the target can be obtained, in order of subset bitmask.
+   * @param target
+   *   the target number to be obtained
+   * @return
+   *   list of expressions in the form of IntExpression.toString()
+   * @throws IllegalStateException
+   *   if a set the query needs would exceed the limit on stored values
+   */
+  public synchronized ArrayList<String> findExpressions(int target)
+  {
+    prepare(target);
+    ArrayList<String> results = new ArrayList<String>();
+    for (int mask = 1; mask < sets.length; ++mask)
+    {
+      if (count(mask, target) != 0)
+      {
+        results.add(expression(mask, target));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Answers the target for every subset whose set is not built, along with
+   * the values of smaller subsets the answers depend on.  The values needed
+   * are collected by going through the queries from the largest subsets
+   * down without answering them; a subset comes before any subset
+   * containing it in order of bitmask.  They are then answered from the
+   * smallest subsets up, those of each size in parallel.  Since collect()
+   * goes through the same lookups as answer(), every value looked up in a
+   * subset without a set has been answered by then.
+   */
+  private void prepare(int target)
+  {
+    collecting = true;
+    try
+    {
+      for (int mask = 1; mask < sets.length; ++mask)
+      {
+        count(mask, target);
+      }
+      for (int mask = sets.length - 1; mask > 0; --mask)
+      {
+        if (requests[mask] != null)
+        {
+          collect(mask);
+        }
+      }
+    }
+    finally
+    {
+      collecting = false;
+    }
+    for (int size = 1; size <= leaves.length; ++size)
+    {
+      final int bits = size;
+      IntStream.range(1, sets.length).parallel()
+          .filter(mask -> needed[mask] != null && Integer.bitCount(mask) == bits).forEach(this::answer);
+    }
+  }
+
+  /**
+   * Gathers the values asked of the given subset, all of whose supersets
+   * have been collected, into the values needed from it.  Then collects
+   * the values needed from smaller subsets to answer them, going through
+   * each split that has a part without a set as count() would.
+   */
+  private void collect(int mask)
+  {
+    IntMultiset values = new IntMultiset(16);
+    for (int i = 0; i < requestCounts[mask]; ++i)
+    {
+      values.add(requests[mask][i], 1);
+    }
+    requests[mask] = null;
+    requestCounts[mask] = 0;
+    needed[mask] = values;
+    int[] list = values.toArray();
+    long[] ignored = new long[list.length];
+    int low = mask & -mask;
+    int rest = mask ^ low;
+    for (int sub = rest; ; sub = (sub - 1) & rest)
+    {
+      if (sub != rest)
+      {
+        int a = low | sub;
+        int b = mask ^ a;
+        if (sets[a] == null || sets[b] == null)
+        {
+          if (isSmaller(a, b))
+          {
+            countPairs(a, b, list, ignored);
+          }
+          else
+          {
+            countPairs(b, a, list, ignored);
+          }
+        }
+      }
+      if (sub == 0)
+      {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Answers all the values needed from the given subset, and keeps the
+   * answers.  For each split whose parts both have sets, the pairs of their
+   * values are combined and the results needed are counted if that is
+   * quicker than looking up the completing values for each value needed.
+   */
+  private void answer(int mask)
+  {
+    IntMultiset values = needed[mask];
+    needed[mask] = null;
+    if (sets[mask] != null)
+    {
+      return;
+    }
+    Tally ways = new Tally(values);
+    int[] list = values.toArray();
+    long[] lookedUp = new long[list.length];
+    int low = mask & -mask;
+    int rest = mask ^ low;
+    for (int sub = rest; ; sub = (sub - 1) & rest)
+    {
+      if (sub != rest)
+      {
+        int a = low | sub;
+        int b = mask ^ a;
+        if (sets[a] != null && sets[b] != null && (long) sets[a].size() * sets[b].size()
+            <= ways.pairsPerLookup() * values.size() * Math.min(sets[a].size(), sets[b].size()))
+        {
+          combine(a, b, ways);
+        }
+        else if (isSmaller(a, b))
+        {
+          countPairs(a, b, list, lookedUp);
+        }
+        else
+        {
+          countPairs(b, a, list, lookedUp);
+        }
+      }
+      if (sub == 0)
+      {
+        break;
+      }
+    }
+
+    if (found[mask] == null)
+    {
+      found[mask] = new IntMultiset(16);
+      missing[mask] = new IntMultiset(16);
+    }
+    for (int j = 0; j < list.length; ++j)
+    {
+      long n = ways.get(list[j]) + lookedUp[j];
+      if (n != 0)
+      {
+        found[mask].add(list[j], n);
+      }
+      else
+      {
+        missing[mask].add(list[j], 1);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of ways to obtain the value from the given subset.
+   */
+  private long count(int mask, int value)
+  {
+    IntMultiset set = sets[mask];
+    if (set != null)
+    {
+      return set.count(value);
+    }
+    if (Math.abs((long) value) > bounds[mask])
+    {
+      return 0;
+    }
+    IntMultiset known = found[mask];
+    if (known != null)
+    {
+      long ways = known.count(value);
+      if (ways != 0 || missing[mask].count(value) != 0)
+      {
+        return ways;
+      }
+    }
+    return collecting ? request(mask, value) : search(mask, value);
+  }
+
+  /**
+   * Records that the value is asked of the given subset while collecting,
+   * and returns zero.  The values are appended to a list rather than added
+   * to a set, which keeps count() small enough to compile well for both
+   * collecting and answering.
+   */
+  private long request(int mask, int value)
+  {
+    int[] list = requests[mask];
+    int k = requestCounts[mask];
+    if (list == null)
+    {
+      list = new int[16];
+      requests[mask] = list;
+    }
+    else if (k == list.length)
+    {
+      list = Arrays.copyOf(list, k * 2);
+      requests[mask] = list;
+    }
+    list[k] = value;
+    requestCounts[mask] = k + 1;
+    return 0;
+  }
+
+  /**
+   * Returns the number of ways to obtain the value from the given subset,
+   * which has no set, by going through its splits, and keeps the answer.
+   */
+  private long search(int mask, int value)
+  {
+    int[] list = {value};
+    long[] ways = new long[1];
+    int low = mask & -mask;
+    int rest = mask ^ low;
+    for (int sub = rest; ; sub = (sub - 1) & rest)
+    {
+      if (sub != rest)
+      {
+        int a = low | sub;
+        int b = mask ^ a;
+        if (isSmaller(a, b))
+        {
+          countPairs(a, b, list, ways);
+        }
+        else
+        {
+          countPairs(b, a, list, ways);
+        }
+      }
+      if (sub == 0)
+      {
+        break;
+      }
+    }
+
+    long total = ways[0];
+    if (sets[mask] == null)
+    {
+      if (found[mask] == null)
+      {
+        found[mask] = new IntMultiset(16);
+        missing[mask] = new IntMultiset(16);
+      }
+      if (total != 0)
+      {
+        found[mask].add(value, total);
+      }
+      else
+      {
+        missing[mask].add(value, 1);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns whether the values of subset a are the ones to go through in
+   * combining it with subset b: a has a set, and b either has none or a
+   * larger one.  If neither has a set, the one for the smaller subset is
+   * built.
+   */
+  private boolean isSmaller(int a, int b)
+  {
+    if (sets[a] == null && sets[b] == null)
+    {
+      ensureBuilt(Integer.bitCount(a) <= Integer.bitCount(b) ? a : b);
+    }
+    return sets[a] != null && (sets[b] == null || sets[a].size() <= sets[b].size());
+  }
+
+  /**
+   * Returns the total number of ways over all values of the given subset,
+   * building its set if needed.
+   */
+  private long total(int mask)
+  {
+    ensureBuilt(mask);
+    return totals[mask];
+  }
+
+  /**
+   * Adds to each count in ways the number of ways to obtain the value at
+   * the same index by combining a value x of subset a, whose set is built,
+   * with a value y of subset b.  For each x, the values of y for each
+   * operator are found by solving for y, for all the values together.
+   * When int arithmetic may wrap around, they are found taking that into
+   * account, so that the count agrees with combine().  Both cases are kept
+   * in this one method, which makes it too large to be compiled into each
+   * of its callers over again.
+   */
+  private void countPairs(int a, int b, int[] values, long[] ways)
+  {
+    IntMultiset xs = sets[a];
+    boolean exact = bounds[a | b] != Long.MAX_VALUE;
+    IntMultiset ys = sets[b];
+    long bound = bounds[b];
+    for (int i = 0; i < xs.capacity(); ++i)
+    {
+      long cx = xs.countAt(i);
+      if (cx == 0)
+      {
+        continue;
+      }
+      int x = xs.keyAt(i);
+      for (int j = 0; j < values.length; ++j)
+      {
+        int value = values[j];
+        long n;
+        if (exact)
+        {
+          // no combination wraps around, so each operator has one y for x
+          n = lookup(ys, b, bound, (long) value - x) + lookup(ys, b, bound, (long) x - value)
+              + lookup(ys, b, bound, (long) value + x);
+          if (x == 0)
+          {
+            // 0 * y, and 0 / y for y other than 0
+            n += value == 0 ? 2 * total(b) - count(b, 0) : 0;
+          }
+          else
+          {
+            // x * y, x / y and y / x
+            n += value % x == 0 ? lookup(ys, b, bound, value / x) : 0;
+            n += value != 0 && x % value == 0 ? lookup(ys, b, bound, x / value) : 0;
+            n += lookup(ys, b, bound, (long) value * x);
+          }
+        }
+        else
+        {
+          n = count(b, value - x) + count(b, x - value) + count(b, value + x);
+          n += countProducts(x, value, b);
+
+          // x / y
+          if (value == 0)
+          {
+            n += x == 0 ? total(b) - count(b, 0) : 0;
+          }
+          else if (x % value == 0)
+          {
+            int y = x / value;
+            if (y != 0 && x % y == 0 && x / y == value)
+            {
+              n += count(b, y);
+            }
+            if (x == Integer.MIN_VALUE && value == Integer.MIN_VALUE)
+            {
+              // MIN_VALUE / -1 wraps around to MIN_VALUE
+              n += count(b, -1);
+            }
+          }
+
+          // y / x
+          if (x != 0)
+          {
+            long y = (long) value * x;
+            if (y >= Integer.MIN_VALUE && y <= Integer.MAX_VALUE)
+            {
+              n += count(b, (int) y);
+            }
+            else if (x == -1 && value == Integer.MIN_VALUE)
+            {
+              n += count(b, Integer.MIN_VALUE);
+            }
+          }
+        }
+        ways[j] += cx * n;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of ways to obtain the value from subset b, or zero
+   * if it is beyond the given bound of the subset.  The set of the subset
+   * is passed along with it, or null if it has none, so that both are read
+   * once for all lookups.
+   */
+  private long lookup(IntMultiset ys, int b, long bound, long value)
+  {
+    if (Math.abs(value) > bound)
+    {
+      return 0;
+    }
+    return ys != null ? ys.count((int) value) : count(b, (int) value);
+  }
+
+  /**
+   * Returns the number of ways x * y wraps around to the value for y in
+   * subset b.  If x has k trailing zero bits, x * y depends only on the
+   * low 32 - k bits of y, which are found using the inverse of the odd
+   * part of x; the solutions are 2^(32 - k) apart, and only those within
+   * the bound of subset b are looked up.
+   */
+  private long countProducts(int x, int value, int b)
+  {
+    if (x == 0)
+    {
+      return value == 0 ? total(b) : 0;
+    }
+    int k = Integer.numberOfTrailingZeros(x);
+    if ((value & ((1 << k) - 1)) != 0)
+    {
+      return 0;
+    }
+    int odd = x >> k;
+    int inverse = odd;
+    for (int i = 0; i < 5; ++i)
+    {
+      inverse *= 2 - odd * inverse;
+    }
+    int y = (value >> k) * inverse;
+    if (k == 0)
+    {
+      return count(b, y);
+    }
+
+    long step = 1L << (32 - k);
+    long bound = Math.min(bounds[b], 1L << 31);
+    long first = Math.max(-bound + Math.floorMod(y + bound, step), Integer.MIN_VALUE);
+    long lookups = (bound - first) / step + 1;
+    if (lookups > MAX_PRODUCT_LOOKUPS)
+    {
+      ensureBuilt(b);
+    }
+    long ways = 0;
+    IntMultiset ys = sets[b];
+    if (ys != null && lookups > ys.size())
+    {
+      for (int i = 0; i < ys.capacity(); ++i)
+      {
+        if (ys.countAt(i) != 0 && x * ys.keyAt(i) == value)
+        {
+          ways += ys.countAt(i);
+        }
+      }
+      return ways;
+    }
+    for (long c = first; c <= bound && c <= Integer.MAX_VALUE; c += step)
+    {
+      ways += count(b, (int) c);
+    }
+    return ways;
+  }
+
+  /**
+   * Adds to result every value obtained by combining a value of subset a
+   * with a value of subset b, counting the ways.
+   */
+  private void combine(int a, int b, IntMultiset result)
+  {
+    IntMultiset xs = sets[a];
+    IntMultiset ys = sets[b];
+    for (int i = 0; i < xs.capacity(); ++i)
+    {
+      long cx = xs.countAt(i);
+      if (cx == 0)
+      {
+        continue;
+      }
+      int x = xs.keyAt(i);
+      for (int k = 0; k < ys.capacity(); ++k)
+      {
+        long cy = ys.countAt(k);
+        if (cy == 0)
+        {
+          continue;
+        }
+        int y = ys.keyAt(k);
+        long c = cx * cy;
+        result.add(x + y, c);
+        result.add(x * y, c);
+        result.add(x - y, c);
+        result.add(y - x, c);
+        if (y != 0 && x % y == 0)
+        {
+          result.add(x / y, c);
+        }
+        if (x != 0 && y % x == 0)
+        {
+          result.add(y / x, c);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds to the tally the ways to obtain each value needed by combining a
+   * value of subset a with a value of subset b.  This is the loop of
+   * combine() for a set, kept separate so that each is compiled for the
+   * one kind of result it adds to.
+   */
+  private void combine(int a, int b, Tally result)
+  {
+    IntMultiset xs = sets[a];
+    IntMultiset ys = sets[b];
+    for (int i = 0; i < xs.capacity(); ++i)
+    {
+      long cx = xs.countAt(i);
+      if (cx == 0)
+      {
+        continue;
+      }
+      int x = xs.keyAt(i);
+      for (int k = 0; k < ys.capacity(); ++k)
+      {
+        long cy = ys.countAt(k);
+        if (cy == 0)
+        {
+          continue;
+        }
+        int y = ys.keyAt(k);
+        long c = cx * cy;
+        result.add(x + y, c);
+        result.add(x * y, c);
+        result.add(x - y, c);
+        result.add(y - x, c);
+        if (y != 0 && x % y == 0)
+        {
+          result.add(x / y, c);
+        }
+        if (x != 0 && y % x == 0)
+        {
+          result.add(y / x, c);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns an expression using every value of the subset whose value is
+   * the given one, which must be obtainable from the subset.
+   */
+  private String expression(int mask, int value)
+  {
+    StringBuilder sb = new StringBuilder();
+    appendExpression(sb, mask, value);
+    return sb.toString();
+  }
+
+  private void appendExpression(StringBuilder sb, int mask, int value)
+  {
+    if (Integer.bitCount(mask) == 1)
+    {
+      sb.append(leaves[Integer.numberOfTrailingZeros(mask)]);
+      return;
+    }
+    int low = mask & -mask;
+    int rest = mask ^ low;
+    for (int pass = 0; pass < 2; ++pass)
+    {
+      for (int sub = rest; ; sub = (sub - 1) & rest)
+      {
+        if (sub != rest)
+        {
+          int a = low | sub;
+          int b = mask ^ a;
+          if (!isSmaller(a, b))
+          {
+            int t = a;
+            a = b;
+            b = t;
+          }
+          if (pass == 0 ? appendInverse(sb, a, b, value) : appendSearch(sb, a, b, value))
+          {
+            return;
+          }
+        }
+        if (sub == 0)
+        {
+          break;
+        }
+      }
+    }
+    throw new IllegalStateException("Value " + value + " not found");
+  }
+
+  /**
+   * Looks for x in subset a, whose set is built, and y in subset b
+   * combining to the value, by solving for y given x.  This finds any
+   * combination whose result did not wrap around.  Appends the expression
+   * and returns true if found.
+   */
+  private boolean appendInverse(StringBuilder sb, int a, int b, int value)
+  {
+    IntMultiset xs = sets[a];
+    for (int i = 0; i < xs.capacity(); ++i)
+    {
+      if (xs.countAt(i) == 0)
+      {
+        continue;
+      }
+      int x = xs.keyAt(i);
+      long[] candidates = {(long) value - x, (long) x - value, (long) value + x,
+          x != 0 && value % x == 0 ? value / x : Long.MIN_VALUE,
+          value != 0 && x % value == 0 ? x / value : Long.MIN_VALUE,
+          (long) value * x,
+          // zero times anything, such as the sum of all of subset b
+          x == 0 && value == 0 ? sum(b) : Long.MIN_VALUE};
+      for (long y : candidates)
+      {
+        if (y >= Integer.MIN_VALUE && y <= Integer.MAX_VALUE && count(b, (int) y) != 0
+            && appendCombination(sb, a, x, b, (int) y, value))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the sum of the values of the given subset.
+   */
+  private int sum(int mask)
+  {
+    int result = 0;
+    for (int i = 0; i < leaves.length; ++i)
+    {
+      if ((mask & (1 << i)) != 0)
+      {
+        result += leaves[i].getIntValue();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Looks for x in subset a and y in subset b combining to the value by
+   * trying every pair, building the set for subset b if needed.  Appends
+   * the expression and returns true if found.
+   */
+  private boolean appendSearch(StringBuilder sb, int a, int b, int value)
+  {
+    ensureBuilt(b);
+    IntMultiset xs = sets[a];
+    IntMultiset ys = sets[b];
+    for (int i = 0; i < xs.capacity(); ++i)
+    {
+      for (int k = 0; xs.countAt(i) != 0 && k < ys.capacity(); ++k)
+      {
+        if (ys.countAt(k) != 0 && appendCombination(sb, a, xs.keyAt(i), b, ys.keyAt(k), value))
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Appends the expression combining x from subset a and y from subset b
+   * to the value, and returns true, if there is an operator that does so.
+   */
+  private boolean appendCombination(StringBuilder sb, int a, int x, int b, int y, int value)
+  {
+    char op;
+    boolean swap = false;
+    if (x + y == value)
+    {
+      op = '+';
+    }
+    else if (x * y == value)
+    {
+      op = '*';
+    }
+    else if (x - y == value)
+    {
+      op = '-';
+    }
+    else if (y - x == value)
+    {
+      op = '-';
+      swap = true;
+    }
+    else if (y != 0 && x % y == 0 && x / y == value)
+    {
+      op = '/';
+    }
+    else if (x != 0 && y % x == 0 && y / x == value)
+    {
+      op = '/';
+      swap = true;
+    }
+    else
+    {
+      return false;
+    }
+    sb.append('(');
+    appendExpression(sb, swap ? b : a, swap ? y : x);
+    sb.append(' ').append(op).append(' ');
+    appendExpression(sb, swap ? a : b, swap ? x : y);
+    sb.append(')');
+    return true;
+  }
+
+  /**
+   * Ways to obtain each of the values needed from a subset, counted in an
+   * array indexed by value if the values are close enough together, and
+   * otherwise by the slot of each value in the set of values needed.
+   * Ways to obtain other values may be counted too, but are never read.
+   */
+  private static class Tally
+  {
+    private final IntMultiset values;
+    private final boolean dense;
+    private final int min;
+    private final long[] ways;
+
+    Tally(IntMultiset values)
+    {
+      this.values = values;
+      int lo = Integer.MAX_VALUE;
+      int hi = Integer.MIN_VALUE;
+      for (int i = 0; i < values.capacity(); ++i)
+      {
+        if (values.countAt(i) != 0)
+        {
+          lo = Math.min(lo, values.keyAt(i));
+          hi = Math.max(hi, values.keyAt(i));
+        }
+      }
+      dense = (long) hi - lo < Math.max(MAX_SPAN, (long) MAX_SPAN_PER_VALUE * values.size());
+      min = lo;
+      ways = new long[dense ? hi - lo + 1 : values.capacity()];
+    }
+
+    /**
+     * Returns the number of pairs that can be combined into this tally in
+     * the time taken to look up the values completing one value.
+     */
+    long pairsPerLookup()
+    {
+      return dense ? PAIRS_PER_LOOKUP : 1;
+    }
+
+    /**
+     * Adds count ways to obtain the given value, if it is needed.
+     */
+    void add(int value, long count)
+    {
+      if (dense)
+      {
+        // compared unsigned, so values below min are out of range too
+        int offset = value - min;
+        if (Integer.compareUnsigned(offset, ways.length) < 0)
+        {
+          ways[offset] += count;
+        }
+      }
+      else
+      {
+        int slot = values.find(value);
+        if (slot >= 0)
+        {
+          ways[slot] += count;
+        }
+      }
+    }
+
+    /**
+     * Returns the number of ways to obtain the given value, which must be
+     * one of the values needed.
+     */
+    long get(int value)
+    {
+      return ways[dense ? value - min : values.find(value)];
+    }
+  }
+}
@@ -54,10 +54,12 @@ public class Cell
    */
   public Cell(Cell existingCell)
   {
-    state = existingCell.state;
-    colOffset = existingCell.colOffset;
-    rowOffset = existingCell.rowOffset;
-    playerPresent = existingCell.playerPresent;
+    // use the accessors, so that copying a subclass that
+    // views some other storage copies the values it presents
+    state = existingCell.getState();
+    colOffset = existingCell.getColumnOffset();
+    rowOffset = existingCell.getRowOffset();
+    playerPresent = existingCell.isPlayerPresent();
   }
   
   /**
@@ -140,12 +142,12 @@ public class Cell
   {
     String player = isPlayerPresent() ? " ($)" : "";
     String offsets = "";
-    if (rowOffset != 0 || colOffset != 0)
+    if (getRowOffset() != 0 || getColumnOffset() != 0)
     {
-      offsets = " offsets (" + rowOffset + ", " + colOffset + ")";
+      offsets = " offsets (" + getRowOffset() + ", " + getColumnOffset() + ")";
     }
     String ret = "[";
-    ret += StringUtil.getChar(state) + player + offsets + "]";
+    ret += StringUtil.getChar(getState()) + player + offsets + "]";
     return ret;
   }
 }
@@ -163,7 +163,9 @@ public class StringUtil
    * Capital letters represent portals, and therefore 
    * any capital letters must occur exactly twice in the
    * string array.  This method will identify pairs of portals and calculate
-   * the correct row and column offsets.
+   * the correct row and column offsets.  (A letter may be reused for
+   * more pairs, in which case each occurrence, in row-major order, is
+   * paired with the next occurrence of the same letter.)
    * @param strings
    *   array of strings representing an initial game grid
    * @return
@@ -208,36 +210,67 @@ public class StringUtil
       }
     }
     
-    // fill in the offsets for the portals
-    for (int i = 0; i < portals.size(); ++i)
+    // fill in the offsets for the portals in one pass, pairing each
+    // portal with the next unmatched portal that has the same id
+    PortalInfo[] unmatched = new PortalInfo['Z' - 'A' + 1];
+    for (PortalInfo p2 : portals)
     {
-      String ids = "";
-      PortalInfo p1 = portals.get(i);
-      char id = p1.getId();
-      if (ids.indexOf(id) < 0)
+      int id = p2.getId() - 'A';
+      PortalInfo p1 = unmatched[id];
+      if (p1 == null)
       {
-        ids += id;
-        for (int j = i + 1; j < portals.size(); ++j)
-        {
-          PortalInfo p2 = portals.get(j);
-          if (p2.getId() == id)
-          {
-            int r1 = p1.getRow();
-            int c1 = p1.getCol();
-            int r2 = p2.getRow();
-            int c2 = p2.getCol();
-            grid[r1][c1].setOffsets(r2 - r1, c2 - c1);
-            grid[r2][c2].setOffsets(r1 - r2, c1 - c2);
-          }       
-        }
+        unmatched[id] = p2;
+      }
+      else
+      {
+        int r1 = p1.getRow();
+        int c1 = p1.getCol();
+        int r2 = p2.getRow();
+        int c2 = p2.getCol();
+        grid[r1][c1].setOffsets(r2 - r1, c2 - c1);
+        grid[r2][c2].setOffsets(r1 - r2, c1 - c2);
+        unmatched[id] = null;
       }
-      
     }
     
     return grid;
   }
   
 
+  /**
+   * Builds a portal index for the given grid.  The index has one entry per
+   * cell, in row-major order, so the cell at (row, col) corresponds to
+   * entry <code>row * width + col</code>.  For a PORTAL cell the entry is
+   * the row-major index of its companion portal, as given by the cell's
+   * offsets; for all other cells it is -1.
+   * @param grid
+   *   2D array of cells whose portal offsets have been calculated
+   * @return
+   *   array mapping each cell's row-major index to its companion portal
+   */
+  public static int[] createPortalIndex(Cell[][] grid)
+  {
+    int height = grid.length;
+    int width = grid[0].length;
+    int[] index = new int[height * width];
+    for (int row = 0; row < height; row += 1)
+    {
+      for (int col = 0; col < width; col += 1)
+      {
+        Cell c = grid[row][col];
+        if (c.getState() == PORTAL)
+        {
+          index[row * width + col] = (row + c.getRowOffset()) * width + col + c.getColumnOffset();
+        }
+        else
+        {
+          index[row * width + col] = -1;
+        }
+      }
+    }
+    return index;
+  }
+
   /**
    * Converts a grid to a string array representation using the characters 
    * defined in this class.  All portals will be represented as the 'O'
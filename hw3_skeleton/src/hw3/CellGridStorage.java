@@ -0,0 +1,83 @@
+package hw3;
+
+import api.Cell;
+import api.State;
+import api.StringUtil;
+
+/**
+ * Grid storage backed by a two-dimensional array of <code>Cell</code>
+ * objects, as created by <code>StringUtil.createFromStringArray</code>.
+ */
+public class CellGridStorage implements GridStorage
+{
+  /**
+   * Two-dimensional array of Cell objects representing the grid.
+   */
+  private Cell[][] grid;
+
+  /**
+   * Companion portal for each cell, indexed by <code>row * columns + col</code>;
+   * see <code>StringUtil.createPortalIndex</code>.
+   */
+  private int[] portalIndex;
+
+  /**
+   * Constructs a grid from the given string description, using the 
+   * conventions of <code>StringUtil.createFromStringArray</code>.
+   * @param init
+   *   string array describing initial cell states
+   */
+  public CellGridStorage(String[] init)
+  {
+    grid = StringUtil.createFromStringArray(init);
+    portalIndex = StringUtil.createPortalIndex(grid);
+  }
+
+  @Override
+  public int getRows()
+  {
+    return grid.length;
+  }
+
+  @Override
+  public int getColumns()
+  {
+    return grid[0].length;
+  }
+
+  @Override
+  public State getState(int row, int col)
+  {
+    return grid[row][col].getState();
+  }
+
+  @Override
+  public void setState(int row, int col, State s)
+  {
+    grid[row][col].setState(s);
+  }
+
+  @Override
+  public boolean isPlayerPresent(int row, int col)
+  {
+    return grid[row][col].isPlayerPresent();
+  }
+
+  @Override
+  public void setPlayerPresent(int row, int col, boolean isPresent)
+  {
+    grid[row][col].setPlayerPresent(isPresent);
+  }
+
+  @Override
+  public int getCompanion(int row, int col)
+  {
+    return portalIndex[row * grid[0].length + col];
+  }
+
+  @Override
+  public Cell getCell(int row, int col)
+  {
+    return grid[row][col];
+  }
+}
@@ -0,0 +1,21 @@
+package hw3;
+
+/**
+ * Thrown when the state sequence for a move would never reach a boundary,
+ * for example in a row with no walls whose path wraps around the grid
+ * forever.  This is a defect of the level, not of the game or of a caller.
+ */
+public class EndlessPathException extends IllegalStateException
+{
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructs an exception with the given detail message.
+   * @param message
+   *   description of the path
+   */
+  public EndlessPathException(String message)
+  {
+    super(message);
+  }
+}
@@ -0,0 +1,99 @@
+package hw3;
+
+import api.Cell;
+import api.State;
+
+/**
+ * Storage for the cells of a Pearls grid.  Implementations
+ * decide how the state of each cell, the player position, and the
+ * companion of each portal are represented; <code>Pearls</code> 
+ * only accesses the grid through this interface.
+ */
+public interface GridStorage
+{
+  /**
+   * Returns the number of rows in the grid.
+   * @return
+   *   height of the grid
+   */
+  int getRows();
+
+  /**
+   * Returns the number of columns in the grid.
+   * @return
+   *   width of the grid
+   */
+  int getColumns();
+
+  /**
+   * Returns the state of the cell at the given row and column.
+   * @param row
+   *   row index for the cell
+   * @param col
+   *   column index for the cell
+   * @return
+   *   state of the cell
+   */
+  State getState(int row, int col);
+
+  /**
+   * Sets the state of the cell at the given row and column.
+   * @param row
+   *   row index for the cell
+   * @param col
+   *   column index for the cell
+   * @param s
+   *   new state for the cell
+   */
+  void setState(int row, int col, State s);
+
+  /**
+   * Determines whether the player is present in the cell at the
+   * given row and column.
+   * @param row
+   *   row index for the cell
+   * @param col
+   *   column index for the cell
+   * @return
+   *   true if the player is present, false otherwise
+   */
+  boolean isPlayerPresent(int row, int col);
+
+  /**
+   * Sets whether the player is present in the cell at the given
+   * row and column.
+   * @param row
+   *   row index for the cell
+   * @param col
+   *   column index for the cell
+   * @param isPresent
+   *   true if the player is present, false otherwise
+   */
+  void setPlayerPresent(int row, int col, boolean isPresent);
+
+  /**
+   * Returns the location of the companion portal for the cell at the
+   * given row and column, as the row-major index 
+   * <code>row * getColumns() + col</code>.
+   * @param row
+   *   row index for the cell
+   * @param col
+   *   column index for the cell
+   * @return
+   *   row-major index of the companion portal, or -1 if the cell
+   *   is not a portal
+   */
+  int getCompanion(int row, int col);
+
+  /**
+   * Returns a Cell for the given row and column.  Changes made through
+   * the returned Cell's state and player setters are reflected in this grid.
+   * @param row
+   *   row index for the cell
+   * @param col
+   *   column index for the cell
+   * @return
+   *   cell at given row and column
+   */
+  Cell getCell(int row, int col);
+}
@@ -0,0 +1,215 @@
+package hw3;
+
+import api.State;
+
+/**
+ * Reusable scratch space for performing moves without allocating
+ * a new state array and MoveRecord objects for every move.  A MoveBuffer
+ * holds one state sequence as an array of State ordinals, together with
+ * the row-major index of the cell each position came from, and the
+ * information that a <code>MoveRecord</code> would hold for each position.
+ * The arrays grow as needed and are reused from one move to the next.
+ * <p>
+ * The arrays are package-private so that <code>PearlUtil</code> and 
+ * <code>Pearls</code> can work on them directly.
+ */
+public class MoveBuffer
+{
+  /**
+   * All State values, indexed by ordinal.
+   */
+  static final State[] STATES = State.values();
+
+  /**
+   * Number of positions in the current state sequence.
+   */
+  int length;
+
+  /**
+   * Current State ordinals of the sequence, modified by the move.
+   */
+  byte[] states;
+
+  /**
+   * State ordinals of the sequence before the move.
+   */
+  byte[] original;
+
+  /**
+   * Row-major index of the grid cell for each position.
+   */
+  int[] cells;
+
+  /**
+   * New index for each position, as in <code>MoveRecord.getMovedTo</code>.
+   */
+  int[] movedTo;
+
+  /**
+   * Disappeared status for each position, as in <code>MoveRecord.isDisappeared</code>.
+   */
+  boolean[] disappeared;
+
+  /**
+   * Closed status for each position, as in <code>MoveRecord.isClosed</code>.
+   */
+  boolean[] closed;
+
+  /**
+   * Constructs a buffer with the given initial capacity.  For a grid the
+   * capacity <code>rows + columns</code> covers any path that does not pass 
+   * through a portal.
+   * @param capacity
+   *   initial capacity
+   */
+  public MoveBuffer(int capacity)
+  {
+    allocate(Math.max(capacity, 2));
+  }
+
+  /**
+   * Clears the buffer to begin a new state sequence.
+   */
+  void clear()
+  {
+    length = 0;
+  }
+
+  /**
+   * Appends a position to the current state sequence, growing
+   * the arrays if necessary.
+   * @param cell
+   *   row-major index of the grid cell
+   * @param s
+   *   state of the cell
+   */
+  void add(int cell, State s)
+  {
+    if (length == states.length)
+    {
+      grow();
+    }
+    byte ord = (byte) s.ordinal();
+    states[length] = ord;
+    original[length] = ord;
+    cells[length] = cell;
+    movedTo[length] = length;
+    disappeared[length] = false;
+    closed[length] = false;
+    length += 1;
+  }
+
+  /**
+   * Returns the number of positions in the current state sequence.
+   * @return
+   *   length of the state sequence
+   */
+  public int length()
+  {
+    return length;
+  }
+
+  /**
+   * Returns the state at the given position after the move.
+   * @param i
+   *   position in the sequence
+   * @return
+   *   current state at position i
+   */
+  public State getState(int i)
+  {
+    return STATES[states[i]];
+  }
+
+  /**
+   * Returns the state at the given position before the move.
+   * @param i
+   *   position in the sequence
+   * @return
+   *   original state at position i
+   */
+  public State getOriginalState(int i)
+  {
+    return STATES[original[i]];
+  }
+
+  /**
+   * Returns the row-major index of the grid cell at the given position.
+   * @param i
+   *   position in the sequence
+   * @return
+   *   cell index for position i
+   */
+  public int getCell(int i)
+  {
+    return cells[i];
+  }
+
+  /**
+   * Returns the new index for the given position; for position 0, 
+   * this is the new index of the player.
+   * @param i
+   *   position in the sequence
+   * @return
+   *   new index for position i
+   */
+  public int getMovedTo(int i)
+  {
+    return movedTo[i];
+  }
+
+  /**
+   * Determines whether the state at the given position was removed by the move.
+   * @param i
+   *   position in the sequence
+   * @return
+   *   true if the state disappeared
+   */
+  public boolean isDisappeared(int i)
+  {
+    return disappeared[i];
+  }
+
+  /**
+   * Determines whether the state at the given position is an open gate
+   * that was closed by the move.
+   * @param i
+   *   position in the sequence
+   * @return
+   *   true if the gate was closed
+   */
+  public boolean isClosed(int i)
+  {
+    return closed[i];
+  }
+
+  /**
+   * Doubles the capacity of all the arrays, preserving their contents.
+   */
+  private void grow()
+  {
+    byte[] oldStates = states;
+    byte[] oldOriginal = original;
+    int[] oldCells = cells;
+    int[] oldMovedTo = movedTo;
+    boolean[] oldDisappeared = disappeared;
+    boolean[] oldClosed = closed;
+    allocate(states.length * 2);
+    System.arraycopy(oldStates, 0, states, 0, length);
+    System.arraycopy(oldOriginal, 0, original, 0, length);
+    System.arraycopy(oldCells, 0, cells, 0, length);
+    System.arraycopy(oldMovedTo, 0, movedTo, 0, length);
+    System.arraycopy(oldDisappeared, 0, disappeared, 0, length);
+    System.arraycopy(oldClosed, 0, closed, 0, length);
+  }
+
+  private void allocate(int capacity)
+  {
+    states = new byte[capacity];
+    original = new byte[capacity];
+    cells = new int[capacity];
+    movedTo = new int[capacity];
+    disappeared = new boolean[capacity];
+    closed = new boolean[capacity];
+  }
+}
@@ -0,0 +1,296 @@
+package hw3;
+
+/**
+ * Undo/redo history for a Pearls game.  For each move the journal keeps 
+ * only the cells whose state the move changed, as (cell, old state, new state)
+ * triples, together with the player's old and new cells and the number of
+ * pearls collected.  Undoing or redoing a move therefore costs time proportional
+ * to the length of its path rather than the size of the grid.
+ * <p>
+ * Memory is bounded: the journal retains at most a fixed number of moves,
+ * and when that many are held the oldest move is forgotten to make room for
+ * a new one.  The changes are kept in a circular array that grows as needed,
+ * so all retained moves can always be undone; its size is proportional to
+ * the changes made by the last <code>maxMoves</code> moves.
+ */
+public class MoveJournal
+{
+  /**
+   * Circular array of cell changes.  Each entry packs the row-major cell index
+   * in the upper bits, the old State ordinal in bits 8-15 and the new
+   * State ordinal in bits 0-7.
+   */
+  private long[] changes;
+
+  /**
+   * Absolute position (before reduction modulo the array length) of the oldest retained change.
+   */
+  private long changeStart;
+
+  /**
+   * Absolute position just past the changes of the last move that has not been undone.
+   */
+  private long changeEnd;
+
+  /**
+   * Absolute position just past the changes of the last move that could be redone.
+   */
+  private long changeLimit;
+
+  // Parallel circular arrays describing each move
+  private long[] moveChangeStart;
+  private int[] movePlayerFrom;
+  private int[] movePlayerTo;
+  private int[] movePearls;
+
+  /**
+   * Absolute index of the oldest retained move.
+   */
+  private long moveStart;
+
+  /**
+   * Absolute index just past the last move that has not been undone.
+   */
+  private long moveEnd;
+
+  /**
+   * Absolute index just past the last move that could be redone.
+   */
+  private long moveLimit;
+
+  /**
+   * True between <code>beginMove</code> and <code>endMove</code>.
+   */
+  private boolean recording;
+
+  /**
+   * Absolute position of the first change of the move being recorded.
+   */
+  private long recordingStart;
+
+  /**
+   * Constructs a journal retaining the given number of moves.
+   * @param maxMoves
+   *   maximum number of moves that can be undone
+   * @param changeCapacity
+   *   initial capacity for cell changes; the array grows when this is exceeded
+   */
+  public MoveJournal(int maxMoves, int changeCapacity)
+  {
+    if (maxMoves < 1)
+    {
+      throw new IllegalArgumentException("Journal must hold at least one move");
+    }
+    changes = new long[Math.max(changeCapacity, 16)];
+    moveChangeStart = new long[maxMoves];
+    movePlayerFrom = new int[maxMoves];
+    movePlayerTo = new int[maxMoves];
+    movePearls = new int[maxMoves];
+  }
+
+  /**
+   * Forgets all moves.
+   */
+  public void clear()
+  {
+    changeStart = changeEnd = changeLimit = 0;
+    moveStart = moveEnd = moveLimit = 0;
+    recording = false;
+  }
+
+  /**
+   * Determines whether a move is currently being recorded.
+   * @return
+   *   true if inside <code>beginMove</code>/<code>endMove</code>
+   */
+  public boolean isRecording()
+  {
+    return recording;
+  }
+
+  /**
+   * Returns the number of moves that can currently be undone.
+   * @return
+   *   number of moves available to undo
+   */
+  public int undoCount()
+  {
+    return (int) (moveEnd - moveStart);
+  }
+
+  /**
+   * Returns the number of moves that can currently be redone.
+   * @return
+   *   number of moves available to redo
+   */
+  public int redoCount()
+  {
+    return (int) (moveLimit - moveEnd);
+  }
+
+  /**
+   * Starts recording a new move.  Any moves that could have been
+   * redone are discarded.
+   */
+  void beginMove()
+  {
+    moveLimit = moveEnd;
+    changeLimit = changeEnd;
+    recordingStart = changeEnd;
+    recording = true;
+  }
+
+  /**
+   * Records a change of state for one cell of the current move.
+   * @param cell
+   *   row-major index of the cell
+   * @param oldOrdinal
+   *   ordinal of the cell's state before the move
+   * @param newOrdinal
+   *   ordinal of the cell's state after the move
+   */
+  void recordChange(int cell, int oldOrdinal, int newOrdinal)
+  {
+    if (changeEnd - changeStart == changes.length)
+    {
+      // never drop moves here: a move with no changes would not free a slot,
+      // and the caller was promised maxMoves moves of history
+      grow();
+    }
+    changes[(int) (changeEnd % changes.length)] = ((long) cell << 16) | (oldOrdinal << 8) | newOrdinal;
+    changeEnd += 1;
+  }
+
+  /**
+   * Finishes recording the current move.
+   * @param playerFrom
+   *   row-major index of the player's cell before the move
+   * @param playerTo
+   *   row-major index of the player's cell after the move
+   * @param pearls
+   *   number of pearls removed by the move
+   */
+  void endMove(int playerFrom, int playerTo, int pearls)
+  {
+    if (moveEnd - moveStart == moveChangeStart.length)
+    {
+      dropOldest();
+    }
+    int m = (int) (moveEnd % moveChangeStart.length);
+    moveChangeStart[m] = recordingStart;
+    movePlayerFrom[m] = playerFrom;
+    movePlayerTo[m] = playerTo;
+    movePearls[m] = pearls;
+    moveEnd += 1;
+    moveLimit = moveEnd;
+    changeLimit = changeEnd;
+    recording = false;
+  }
+
+  /**
+   * Removes the most recent move from the undo history so that it
+   * can be redone, and returns its index for use with the accessors below.
+   * @return
+   *   index of the move to undo
+   */
+  long undo()
+  {
+    moveEnd -= 1;
+    changeEnd = moveChangeStart[(int) (moveEnd % moveChangeStart.length)];
+    return moveEnd;
+  }
+
+  /**
+   * Returns the next move to be redone to the undo history and returns
+   * its index for use with the accessors below.
+   * @return
+   *   index of the move to redo
+   */
+  long redo()
+  {
+    long move = moveEnd;
+    moveEnd += 1;
+    changeEnd = moveChangeEnd(move);
+    return move;
+  }
+
+  /**
+   * Returns the absolute position of the first change of the given move.
+   */
+  long changeStart(long move)
+  {
+    return moveChangeStart[(int) (move % moveChangeStart.length)];
+  }
+
+  /**
+   * Returns the absolute position just past the last change of the given move.
+   */
+  long moveChangeEnd(long move)
+  {
+    if (move + 1 < moveLimit)
+    {
+      return moveChangeStart[(int) ((move + 1) % moveChangeStart.length)];
+    }
+    return changeLimit;
+  }
+
+  int playerFrom(long move)
+  {
+    return movePlayerFrom[(int) (move % moveChangeStart.length)];
+  }
+
+  int playerTo(long move)
+  {
+    return movePlayerTo[(int) (move % moveChangeStart.length)];
+  }
+
+  int pearls(long move)
+  {
+    return movePearls[(int) (move % moveChangeStart.length)];
+  }
+
+  /**
+   * Returns the packed change at the given absolute position.
+   */
+  long change(long position)
+  {
+    return changes[(int) (position % changes.length)];
+  }
+
+  static int changeCell(long change)
+  {
+    return (int) (change >>> 16);
+  }
+
+  static int changeOld(long change)
+  {
+    return (int) ((change >>> 8) & 0xff);
+  }
+
+  static int changeNew(long change)
+  {
+    return (int) (change & 0xff);
+  }
+
+  /**
+   * Forgets the oldest retained move.
+   */
+  private void dropOldest()
+  {
+    moveStart += 1;
+    changeStart = moveStart < moveLimit ? changeStart(moveStart) : changeLimit;
+  }
+
+  /**
+   * Doubles the capacity of the change array, preserving retained changes.
+   */
+  private void grow()
+  {
+    long[] bigger = new long[changes.length * 2];
+    for (long p = changeStart; p < changeEnd; ++p)
+    {
+      bigger[(int) (p % bigger.length)] = changes[(int) (p % changes.length)];
+    }
+    changes = bigger;
+  }
+}
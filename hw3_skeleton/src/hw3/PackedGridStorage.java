@@ -0,0 +1,222 @@
+package hw3;
+
+import java.util.Arrays;
+
+import api.Cell;
+import api.State;
+import api.StringUtil;
+
+/**
+ * Grid storage that packs each cell into one byte of a row-major
+ * array.  The low four bits hold the ordinal of the cell's State and 
+ * bit 4 is set when the player is present.  A parallel row-major int array
+ * links each portal to its companion, so a jump is a single lookup and the
+ * grid needs no per-cell objects at all.  <code>getCell</code> returns a
+ * lightweight view onto the packed data.
+ */
+public class PackedGridStorage implements GridStorage
+{
+  /**
+   * Mask for the State ordinal within a packed cell.
+   */
+  private static final int STATE_MASK = 0x0f;
+
+  /**
+   * Bit indicating the player is present in a packed cell.
+   */
+  private static final int PLAYER_BIT = 0x10;
+
+  /**
+   * All State values, indexed by ordinal.
+   */
+  private static final State[] STATES = State.values();
+
+  private final int rows;
+  private final int cols;
+
+  /**
+   * Packed cells in row-major order.
+   */
+  private final byte[] cells;
+
+  /**
+   * Row-major index of the cell linked to each cell by its offsets, minus
+   * the cell's own index.  Cells without offsets, including unmatched
+   * portals, are linked to themselves, as in <code>CellGridStorage</code>.
+   */
+  private final int[] links;
+
+  /**
+   * Constructs a grid from the given string description, using the 
+   * conventions of <code>StringUtil.createFromStringArray</code>.
+   * @param init
+   *   string array describing initial cell states
+   */
+  public PackedGridStorage(String[] init)
+  {
+    rows = init.length;
+    cols = init[0].length();
+    cells = new byte[rows * cols];
+    links = new int[rows * cols];
+
+    // pair each portal with the next unmatched portal having the same id,
+    // as in StringUtil.createFromStringArray
+    int[] unmatched = new int['Z' - 'A' + 1];
+    Arrays.fill(unmatched, -1);
+    for (int row = 0; row < rows; row += 1)
+    {
+      for (int col = 0; col < cols; col += 1)
+      {
+        char ch = init[row].charAt(col);
+        if (ch >= 'A' && ch <= 'Z')
+        {
+          int index = row * cols + col;
+          cells[index] = (byte) State.PORTAL.ordinal();
+          int other = unmatched[ch - 'A'];
+          if (other < 0)
+          {
+            unmatched[ch - 'A'] = index;
+          }
+          else
+          {
+            links[index] = other - index;
+            links[other] = index - other;
+            unmatched[ch - 'A'] = -1;
+          }
+        }
+        else if (ch == StringUtil.PLAYER_CHAR)
+        {
+          cells[row * cols + col] = (byte) (State.EMPTY.ordinal() | PLAYER_BIT);
+        }
+        else
+        {
+          State state = StringUtil.getValue(ch);
+          cells[row * cols + col] = (byte) (state == null ? State.EMPTY : state).ordinal();
+        }
+      }
+    }
+  }
+
+  @Override
+  public int getRows()
+  {
+    return rows;
+  }
+
+  @Override
+  public int getColumns()
+  {
+    return cols;
+  }
+
+  @Override
+  public State getState(int row, int col)
+  {
+    return STATES[cells[row * cols + col] & STATE_MASK];
+  }
+
+  @Override
+  public void setState(int row, int col, State s)
+  {
+    int i = row * cols + col;
+    cells[i] = (byte) ((cells[i] & ~STATE_MASK) | s.ordinal());
+  }
+
+  @Override
+  public boolean isPlayerPresent(int row, int col)
+  {
+    return (cells[row * cols + col] & PLAYER_BIT) != 0;
+  }
+
+  @Override
+  public void setPlayerPresent(int row, int col, boolean isPresent)
+  {
+    int i = row * cols + col;
+    if (isPresent)
+    {
+      cells[i] = (byte) (cells[i] | PLAYER_BIT);
+    }
+    else
+    {
+      cells[i] = (byte) (cells[i] & ~PLAYER_BIT);
+    }
+  }
+
+  @Override
+  public int getCompanion(int row, int col)
+  {
+    if (getState(row, col) != State.PORTAL)
+    {
+      return -1;
+    }
+    int i = row * cols + col;
+    return i + links[i];
+  }
+
+  @Override
+  public Cell getCell(int row, int col)
+  {
+    return new CellView(row, col);
+  }
+
+  /**
+   * Cell whose state and player attributes are read from and
+   * written to the packed grid.
+   */
+  private class CellView extends Cell
+  {
+    private final int row;
+    private final int col;
+
+    public CellView(int row, int col)
+    {
+      super(State.EMPTY);
+      this.row = row;
+      this.col = col;
+    }
+
+    @Override
+    public State getState()
+    {
+      return PackedGridStorage.this.getState(row, col);
+    }
+
+    @Override
+    public void setState(State givenState)
+    {
+      PackedGridStorage.this.setState(row, col, givenState);
+    }
+
+    @Override
+    public boolean isPlayerPresent()
+    {
+      return PackedGridStorage.this.isPlayerPresent(row, col);
+    }
+
+    @Override
+    public void setPlayerPresent(boolean isPresent)
+    {
+      PackedGridStorage.this.setPlayerPresent(row, col, isPresent);
+    }
+
+    @Override
+    public int getRowOffset()
+    {
+      int i = row * cols + col;
+      return (i + links[i]) / cols - row;
+    }
+
+    @Override
+    public int getColumnOffset()
+    {
+      int i = row * cols + col;
+      return (i + links[i]) % cols - col;
+    }
+
+    @Override
+    public void setOffsets(int rowOffset, int colOffset)
+    {
+      links[row * cols + col] = rowOffset * cols + colOffset;
+    }
+  }
+}
@@ -17,6 +17,14 @@ import api.State;
  */
 public class PearlUtil
 {
+  // State ordinals used by the MoveBuffer versions of the algorithms
+  private static final byte EMPTY_ORD = (byte) EMPTY.ordinal();
+  private static final byte PEARL_ORD = (byte) PEARL.ordinal();
+  private static final byte OPEN_GATE_ORD = (byte) OPEN_GATE.ordinal();
+  private static final byte CLOSED_GATE_ORD = (byte) State.CLOSED_GATE.ordinal();
+  private static final byte MOVABLE_POS_ORD = (byte) State.MOVABLE_POS.ordinal();
+  private static final byte MOVABLE_NEG_ORD = (byte) State.MOVABLE_NEG.ordinal();
+
   public PearlUtil()
   {
     // does nothing
@@ -45,8 +53,9 @@ public class PearlUtil
       {
         states[i] = (EMPTY);
         
-        if(records[i] != null){
-        	records[i].setDisappeared();// TODO - update records, if non-null
+        if (records != null)
+        {
+          records[i].setDisappeared();
         }
       }
     }
@@ -200,19 +209,16 @@ public class PearlUtil
       if (states[i] == State.OPEN_GATE)
       {
         states[i] = (State.CLOSED_GATE);        
+        if (records != null)
+        {
+          records[i].setClosed();
+        }
       }
     }
-    int i = 0;
-    if(records[i] != null) {
-    	records[0].setMovedToIndex(end);
-    	 for(i = 1; i< end; i++){
-    		 if(records[i].getState() == State.PEARL) {
-    			records[i].setDisappeared();
-    		 }
-    	 }
-   
-    	// TODO - update records, if non-null
-    	}
+    if (records != null)
+    {
+      records[0].setMovedToIndex(end);
+    }
     
     return end;
   }
@@ -302,13 +308,12 @@ public class PearlUtil
 
           // ('end' stays the same, since the blocks disappeared)
           
-          for(int i = prev+1; i <= end; i++){
-        	  if(records[i] != null){
-        		  records[i].setMovedToIndex(end);
-        		  if(records[i].isMoved() || records[i].isDisappeared() || records[i].getState() == State.PEARL){
-        			  records[i].setDisappeared();// TODO - update records, if non-null
-        		  }
-        	  }
+          if (records != null)
+          {
+            records[prev].setMovedToIndex(end);
+            records[prev].setDisappeared();
+            records[nextMovable].setMovedToIndex(end);
+            records[nextMovable].setDisappeared();
           }
 
         }
@@ -325,11 +330,9 @@ public class PearlUtil
             states[end] = states[nextMovable];
             states[nextMovable] = (State.EMPTY);
 
-            for(int i = nextMovable + 1; i<=end; i++){
-            	records[i].setMovedToIndex(end);
-            	if((records[i].isMoved() || records[i].isDisappeared() || records[i].getState() == State.PEARL)){
-            		records[i].setDisappeared();// TODO - update records, if non-null
-            	}
+            if (records != null)
+            {
+              records[nextMovable].setMovedToIndex(end);
             }
           }
 
@@ -340,5 +343,176 @@ public class PearlUtil
     }
   }
 
+  /**
+   * Same as <code>collectPearls(State[], MoveRecord[], int, int)</code>, but operating
+   * on the State ordinals and records held in the given MoveBuffer.
+   * @param buffer
+   *   buffer holding the state sequence
+   * @param start
+   *   starting index, inclusive
+   * @param end
+   *   ending index, inclusive
+   */
+  public void collectPearls(MoveBuffer buffer, int start, int end)
+  {
+    byte[] states = buffer.states;
+    for (int i = start; i <= end; i += 1)
+    {
+      if (states[i] == PEARL_ORD)
+      {
+        states[i] = EMPTY_ORD;
+        buffer.disappeared[i] = true;
+      }
+    }
+  }
+
+  /**
+   * Same as <code>findRightmostMovableBlock(State[], int)</code>, but operating
+   * on an array of State ordinals.
+   * @param states
+   *   array of State ordinals
+   * @param start
+   *   starting index for searching
+   * @return
+   *   index of first movable block encountered when searching towards
+   *   the left, starting from the given starting index; returns -1 if there
+   *   is no movable block found
+   */
+  public int findRightmostMovableBlock(byte[] states, int start)
+  {
+    int i = start;
+    while (i >= 0 && states[i] != MOVABLE_POS_ORD && states[i] != MOVABLE_NEG_ORD)
+    {
+      i--;
+    }
+    return i;
+  }
+
+  /**
+   * Same as <code>isValidForMoveBlocks(State[])</code>, but for the state 
+   * sequence held in the given MoveBuffer.
+   * @param buffer
+   *   buffer holding the state sequence
+   * @return
+   *   true if the buffer holds a valid state sequence, false otherwise
+   */
+  public static boolean isValidForMoveBlocks(MoveBuffer buffer)
+  {
+    int length = buffer.length;
+    byte[] states = buffer.states;
+    if (length < 2)
+    {
+      return false;
+    }
+    State start = MoveBuffer.STATES[states[0]];
+    if (!(start == EMPTY || start == OPEN_GATE || start == PORTAL))
+    {
+      return false;
+    }
+    boolean containsMovable = false;
+    for (int i = 1; i < length; ++i)
+    {
+      State c = MoveBuffer.STATES[states[i]];
+      if (isMovable(c))
+      {
+        containsMovable = true;
+      }
+      if (isBoundary(c, containsMovable))
+      {
+        return i == length - 1;
+      }
+    } 
+    return false;
+  }
+
+  /**
+   * Same as <code>movePlayer(State[], MoveRecord[], Direction)</code>, but operating
+   * on the State ordinals and records held in the given MoveBuffer, without
+   * allocating any objects.
+   * @param buffer
+   *   buffer holding a valid state sequence in which movable blocks, if any,
+   *   are at the far right only
+   * @param dir
+   *   direction of the move, for the purpose of determining whether spikes may be deadly
+   * @return
+   *   the player's new index
+   */
+  public int movePlayer(MoveBuffer buffer, Direction dir)
+  {
+    byte[] states = buffer.states;
+    int length = buffer.length;
+    int end = length - 2;
+    for (int i = 0; i < length; ++i)
+    {
+      if (states[i] == MOVABLE_POS_ORD || states[i] == MOVABLE_NEG_ORD)
+      {
+        end = i - 1;
+        break;
+      }
+    }
+    if (State.spikesAreDeadly(MoveBuffer.STATES[states[end + 1]], dir))
+    {
+      end = end + 1;
+    } 
+
+    collectPearls(buffer, 0, end);
+
+    for (int i = 0; i < end; ++i)
+    {
+      if (states[i] == OPEN_GATE_ORD)
+      {
+        states[i] = CLOSED_GATE_ORD;
+        buffer.closed[i] = true;
+      }
+    }
+    buffer.movedTo[0] = end;
+    return end;
+  }
+
+  /**
+   * Same as <code>moveBlocks(State[], MoveRecord[])</code>, but operating
+   * on the State ordinals and records held in the given MoveBuffer, without
+   * allocating any objects.
+   * @param buffer
+   *   buffer holding a valid state sequence
+   */
+  public void moveBlocks(MoveBuffer buffer)
+  {
+    if (!isValidForMoveBlocks(buffer))
+    {
+      throw new IllegalArgumentException("Invalid state array for moveBlocks");
+    }
+
+    byte[] states = buffer.states;
+    int end = buffer.length - 2;
+    int nextMovable = findRightmostMovableBlock(states, end);
+    while (nextMovable >= 0)
+    {
+      int prev = findRightmostMovableBlock(states, nextMovable - 1);
+      if (prev >= 0 && states[prev] != states[nextMovable])
+      {
+        // opposite parity, the two blocks merge and disappear
+        collectPearls(buffer, prev + 1, end);
+        states[nextMovable] = EMPTY_ORD;
+        states[prev] = EMPTY_ORD;
+        buffer.movedTo[prev] = end;
+        buffer.disappeared[prev] = true;
+        buffer.movedTo[nextMovable] = end;
+        buffer.disappeared[nextMovable] = true;
+      }
+      else
+      {
+        collectPearls(buffer, nextMovable + 1, end);
+        if (nextMovable < end)
+        {
+          states[end] = states[nextMovable];
+          states[nextMovable] = EMPTY_ORD;
+          buffer.movedTo[nextMovable] = end;
+        }
+        end = end - 1;
+      }
+      nextMovable = findRightmostMovableBlock(states, end);
+    }
+  }
 
 }
@@ -5,7 +5,6 @@ import api.Cell;
 import api.Direction;
 import api.MoveRecord;
 import api.State;
-import api.StringUtil;
 
 /**
  * Basic game state and operations for a the puzzle game "Pearls", which
@@ -15,25 +14,61 @@ import api.StringUtil;
 public class Pearls
 {
   /**
-   * Two-dimensional array of Cell objects representing the 
-   * grid on which the game is played.
+   * Storage for the cells of the grid on which the game is played.
    */
-  private Cell[][] grid;
-  
+  private GridStorage grid;
+
   /**
    * Instance of PearlUtil to be used with this game.
    */
   private PearlUtil util;
-  
+
   private int score = 0;
-  private int moveCount = 0;// TODO - any other instance variables you need
+  private int moveCount = 0;
+
+  /**
+   * Number of pearls remaining in the grid, maintained incrementally
+   * as cells are updated by <code>setStateSequence</code>.
+   */
   private int currentpearls = 0;
-  
-  
+
+  /**
+   * Row index of the cell containing the player.
+   */
+  private int playerRow;
+
+  /**
+   * Column index of the cell containing the player.
+   */
+  private int playerCol;
+
+  /**
+   * True if the player currently occupies a cell with spikes.
+   */
+  private boolean playerOnSpikes;
+
+  /**
+   * Scratch space reused by <code>move</code>, or null if moves should
+   * return a new MoveRecord array.
+   */
+  private MoveBuffer buffer;
+
+  /**
+   * Zobrist hash of the cell states and the player position, kept current
+   * as cells are updated.
+   */
+  private long hash;
+
+  /**
+   * Undo/redo history, or null if undo is not enabled.
+   */
+  private MoveJournal journal;
+
+
   /**
    * Constructs a game from the given string description.  The conventions
-   * for representing cell states as characters can be found in 
-   * <code>StringUtil</code>.  
+   * for representing cell states as characters can be found in
+   * <code>StringUtil</code>.
    * @param init
    *   string array describing initial cell states
    * @param givenUtil
@@ -41,12 +76,45 @@ public class Pearls
    */
   public Pearls(String[] init, PearlUtil givenUtil)
   {
-    grid = StringUtil.createFromStringArray(init);
+    this(new CellGridStorage(init), givenUtil);
+  }
+
+  /**
+   * Constructs a game played on the given grid storage, for example a
+   * <code>PackedGridStorage</code> for very large grids.
+   * @param storage
+   *   grid storage containing the initial cell states
+   * @param givenUtil
+   *   PearlUtil instance to use in the <code>move</code> method
+   */
+  public Pearls(GridStorage storage, PearlUtil givenUtil)
+  {
+    grid = storage;
     util = givenUtil;
 
-    // TODO - any other initialization you need
+    // one scan of the grid up front, after which the player position
+    // and the pearl count are kept current by setStateSequence
+    for (int row = 0; row < grid.getRows(); ++row)
+    {
+      for (int col = 0; col < grid.getColumns(); ++col)
+      {
+        State s = grid.getState(row, col);
+        if (s == State.PEARL)
+        {
+          currentpearls += 1;
+        }
+        hash ^= Zobrist.key(row * grid.getColumns() + col, s.ordinal());
+        if (grid.isPlayerPresent(row, col))
+        {
+          playerRow = row;
+          playerCol = col;
+        }
+      }
+    }
+    playerOnSpikes = State.isSpikes(grid.getState(playerRow, playerCol));
+    hash ^= Zobrist.playerKey(playerRow * grid.getColumns() + playerCol);
   }
-  
+
   /**
    * Returns the number of columns in the grid.
    * @return
@@ -54,9 +122,9 @@ public class Pearls
    */
   public int getColumns()
   {
-    return grid[0].length;
+    return grid.getColumns();
   }
-  
+
   /**
    * Returns the number of rows in the grid.
    * @return
@@ -64,9 +132,9 @@ public class Pearls
    */
   public int getRows()
   {
-    return grid.length;
+    return grid.getRows();
   }
-  
+
   /**
    * Returns the cell at the given row and column.
    * @param row
@@ -78,9 +146,9 @@ public class Pearls
    */
   public Cell getCell(int row, int col)
   {
-    return grid[row][col];
+    return grid.getCell(row, col);
   }
-  
+
   /**
    * Returns true if the game is over, false otherwise.  The game ends when all pearls
    * are removed from the grid or when the player lands on a cell with spikes.
@@ -89,25 +157,15 @@ public class Pearls
    */
   public boolean isOver()
   {
-	  if(countPearls() == 0) {
-		  return true;
-	  }
-	  for(int i = 0; i<grid.length; i++) {
-		  for(int j = 0; j<grid[0].length; i++) {
-			  if(State.isSpikes(getCell(i,j).getState())) {
-				  return true;
-			  }
-		  }
-	  }
-    return false;
+    return currentpearls == 0 || playerOnSpikes;
   }
-  
+
   /**
-   * Performs a move along a state sequence in the given direction, updating the score, 
-   * the move count, and all affected cells in the grid.  The method returns an 
-   * array of MoveRecord objects representing the states in original state sequence before 
+   * Performs a move along a state sequence in the given direction, updating the score,
+   * the move count, and all affected cells in the grid.  The method returns an
+   * array of MoveRecord objects representing the states in original state sequence before
    * modification, with their <code>movedTo</code> and <code>disappeared</code>
-   * status set to indicate the cell states' new locations after modification.  
+   * status set to indicate the cell states' new locations after modification.
    * @param dir
    *   direction of the move
    * @return
@@ -115,253 +173,588 @@ public class Pearls
    */
   public MoveRecord[] move(Direction dir)
   {
-    // TODO
-	  State[] states = getStateSequence(dir);
-	  MoveRecord[] records = new MoveRecord[states.length];
-	  for(int i = 0;i < records.length;i++) {
-		  records[i] = new MoveRecord(states[i],i);
+	  int playerFrom = playerRow * getColumns() + playerCol;
+	  int pearlsBefore = currentpearls;
+
+	  // find the whole path before recording, since that can fail
+	  State[] states = null;
+	  if (buffer != null) {
+		  fillBuffer(dir);
+	  }
+	  else {
+		  states = getStateSequence(dir);
+	  }
+	  if (journal != null) {
+		  journal.beginMove();
 	  }
-	  
-	  util.moveBlocks(states, records);
-	  int playerindex = util.movePlayer(states, records, dir);
-	  
-	  setStateSequence(states,dir,playerindex);
-	  
-	  moveCount = playerindex;
-	  for(int i =0;i<=playerindex;i++) {
-		  if(records[i].getState() == State.PEARL && records[i].isDisappeared()) {
-			  score++;
+
+	  MoveRecord[] records = null;
+	  if (buffer != null) {
+		  moveWithBuffer(dir);
+	  }
+	  else {
+		  records = new MoveRecord[states.length];
+		  for(int i = 0;i < records.length;i++) {
+			  records[i] = new MoveRecord(states[i],i);
 		  }
+
+		  util.moveBlocks(states, records);
+		  int playerindex = util.movePlayer(states, records, dir);
+
+		  setStateSequence(states,dir,playerindex);
 	  }
-	  
-	  
-	  
-	  
-	  
+
+	  moveCount++;
+	  score += pearlsBefore - currentpearls;
+	  if (journal != null) {
+		  journal.endMove(playerFrom, playerRow * getColumns() + playerCol, pearlsBefore - currentpearls);
+	  }
+
     return records;
   }
-  
-  
-  
-  public int countPearls(){
-	  
-	int numOfPearls = 0;
-	for(int i = 0; i< grid.length; i++) {
-		for(int j = 0; j<= grid[i].length;j++) {
-			if(getCell(i,j).getState() == State.PEARL) {
-				numOfPearls++;
-			}
-		}
-	}
-	return numOfPearls;
-	}
-  public int getCurrentRow() {
-	  
-	int currentRow = 0;
-	for(int i = 0; i<grid.length ; i++) {
-		for(int j = 0; j<grid[i].length; j++) {
-			if(grid[i][j].isPlayerPresent()) {
-				currentRow = i;
-			}
-		}
-	}
-	  
-	return currentRow;
-	  
+
+
+  /**
+   * Returns the number of pearls remaining in the grid.
+   * @return
+   *   number of cells whose state is PEARL
+   */
+  public int countPearls()
+  {
+    return currentpearls;
   }
-  public int getCurrentColumn() {
-	  
-	  int currentColumn = 0;
-		for(int i = 0; i<grid.length ; i++) {
-			for(int j = 0; j<grid[i].length; j++) {
-				if(grid[i][j].isPlayerPresent()) {
-					currentColumn = j;
-				}
-			}
-		}
-	  return currentColumn;
+
+  /**
+   * Returns the row index of the player's cell.
+   * @return
+   *   current row of the player
+   */
+  public int getCurrentRow()
+  {
+    return playerRow;
+  }
+
+  /**
+   * Returns the column index of the player's cell.
+   * @return
+   *   current column of the player
+   */
+  public int getCurrentColumn()
+  {
+    return playerCol;
   }
+
   public int getScore(){
 
-	  return score;// TODO - everything else...
+	  return score;
   }
-  
-  public boolean won() {
-	  
-	  if(isOver()) {
-		  for(int i = 0; i<grid[i].length; i++) {
-			  for(int j = 0; j<grid[0].length;j++) {
-				  if(grid[i][j].isPlayerPresent()) {
-					  Cell currentCell = getCell(i,j);
-					  if(State.isSpikes(currentCell.getState())) {
-						  return false;
-					  }else {
-						  return true;
-					  }
-				  }
-			  }
-		  }
-	  }
-	return false;
+
+  /**
+   * Returns true if the game is over and the player is not on spikes.
+   * @return
+   *   true if the player has collected all the pearls and survived
+   */
+  public boolean won()
+  {
+    return isOver() && !playerOnSpikes;
   }
-  
-  public State[] getStateSequence(Direction dir) {
-	  ArrayList<Cell> newState = new ArrayList<>();
-	  boolean flag = false;
-	  int col = getCurrentColumn();
-	  int row = getCurrentRow();
-	  newState.add(grid[row][col]);
-	  
-	  while(!State.isBoundary(grid[row][col].getState(), false)) {
-		  if(grid[row][col].getState() != State.PORTAL || flag == false) {
-			  int tempRow = getNextRow(row,col,dir,false);
-			  int tempCol = getNextColumn(row,col,dir,false);
-			  row = tempRow;
-			  col = tempCol;
-			  newState.add(grid[row][col]);
-			  flag = true;
-		  }else {
-			  flag = false;
-			  int temp1Row = getNextRow(row,col,dir,true);
-			  int temp1Col = getNextColumn(row,col,dir,true);
-			  row = temp1Row;
-			  col = temp1Col;
-			  newState.add(grid[row][col]);
-		  }
-	  }
-	  
-	  State[] newState2 = new State[newState.size()];
-	  for(int i = 0;i < newState.size(); i++) {
-		  newState2[i]= newState.get(i).getState();
-	  }
 
-	return newState2;
-	  
+  /**
+   * Returns the states of the cells along the player's path in the given
+   * direction, starting with the player's cell and ending with the first
+   * boundary cell.  When a portal is reached, the next cell in the sequence
+   * is its companion portal.  A path that wraps around the grid without
+   * ever reaching a boundary is an error in the level.
+   * @param dir
+   *   direction of the move
+   * @return
+   *   state sequence starting at the player's cell
+   * @throws EndlessPathException
+   *   if the path can never reach a boundary
+   */
+  public State[] getStateSequence(Direction dir)
+  {
+    ArrayList<State> states = new ArrayList<>();
+    int row = playerRow;
+    int col = playerCol;
+    State s = grid.getState(row, col);
+    states.add(s);
+
+    boolean containsMovable = false;
+    boolean jumped = false;
+    do
+    {
+      // the second of a pair of portals is always left normally
+      boolean jump = s == State.PORTAL && !jumped;
+      if (jump)
+      {
+        int companion = grid.getCompanion(row, col);
+        row = companion / getColumns();
+        col = companion % getColumns();
+      }
+      else
+      {
+        int nextRow = getNextRow(row, col, dir, false);
+        col = getNextColumn(row, col, dir, false);
+        row = nextRow;
+      }
+      jumped = jump;
+      s = grid.getState(row, col);
+      states.add(s);
+      if (State.isMovable(s))
+      {
+        containsMovable = true;
+      }
+      checkPathLength(states.size(), dir);
+    } while (!State.isBoundary(s, containsMovable));
+
+    return states.toArray(new State[states.size()]);
   }
-  public void setStateSequence(State[] states, Direction dir, int playerIndex) {
-	  //ArrayList<Cell> newState = new ArrayList<>();
-	  boolean flag = false;
-	  int col = getCurrentColumn();
-	  int row = getCurrentRow();
-	  //newState.add(grid[row][col]);
-	  
-	  int count = 0;
-	  
-	  while(!State.isBoundary(grid[row][col].getState(), false) ) {
-		  int tempRow = getNextRow(row,col,dir,false);
-		  int tempCol = getNextColumn(row,col,dir,false);
-		  System.out.println(grid[row][col].getState());
-		  System.out.println(states[count]);
-		  grid[row][col].setState(states[count]);
-		  if(count == 0)grid[row][col].setPlayerPresent(false);
-		  if(count == playerIndex)grid[row][col].setPlayerPresent(true);
-		  System.out.println(grid[row][col].getState());
-		  row = tempRow;
-		  col = tempCol;
-		  count ++;
-		  if(grid[row][col].getState() != State.PORTAL) {
-			  //newState.add(grid[row][col]);
-			  
-		  }
-		  else {
-			  //newState.add(grid[row][col]);
-			  
-			  flag = true;
-			  break;
-		  }
-	  }
-	  int newrow = 0;
-	  int newcol = 0;
-
-	  for(int i = 0;i<grid.length;i++) {
-		  for(int j = 0;j<grid[0].length;j++) {
-			  if(grid[i][j].getState() == State.PORTAL && i != row && j != col) {
-				  newrow = i;
-				  newcol = j;
-			  }
-		  }
-	  }
-	  //newState.add(grid[newrow][newcol]);
-	  //grid[row][col].setState(states[count]);
-	  row = newrow;
-	  col = newcol;
-	  count ++;
-	  while(!State.isBoundary(grid[row][col].getState(), false) ) {
-		  int tempRow = getNextRow(row,col,dir,false);
-		  int tempCol = getNextColumn(row,col,dir,false);
-		  grid[row][col].setState(states[count]);
-		  if(count == playerIndex)grid[row][col].setPlayerPresent(true);
-		  row = tempRow;
-		  col = tempCol;
-		  count ++;
-		  if(grid[row][col].getState() != State.PORTAL) {
-			  //newState.add(grid[row][col]);
-			  
-		  }
-		  else {
-			  //newState.add(grid[row][col]);
-			  flag = true;
-			  break;
-		  }
-	  }
-	  
-	  grid[row][col].setState(states[count]);
 
-	
-	  
+  /**
+   * Writes the given states into the cells along the player's path in the
+   * given direction, that is, the same cells whose states would be returned
+   * by <code>getStateSequence</code>, and moves the player to the cell at
+   * <code>playerIndex</code>.  The pearl count and player position are updated
+   * as the cells are written.
+   * @param states
+   *   new states for the cells in the sequence
+   * @param dir
+   *   direction of the move
+   * @param playerIndex
+   *   index within the sequence of the player's new cell
+   */
+  public void setStateSequence(State[] states, Direction dir, int playerIndex)
+  {
+    if (journal != null && !journal.isRecording())
+    {
+      // a change made outside of move() can't be undone
+      journal.clear();
+    }
+
+    int row = playerRow;
+    int col = playerCol;
+    removePlayer();
+
+    boolean jumped = false;
+    for (int i = 0; i < states.length; ++i)
+    {
+      State current = grid.getState(row, col);
+
+      // find the next cell before overwriting, since portals decide the path
+      boolean jump = current == State.PORTAL && !jumped;
+      int nextRow;
+      int nextCol;
+      if (jump)
+      {
+        int companion = grid.getCompanion(row, col);
+        nextRow = companion / getColumns();
+        nextCol = companion % getColumns();
+      }
+      else
+      {
+        nextRow = getNextRow(row, col, dir, false);
+        nextCol = getNextColumn(row, col, dir, false);
+      }
+
+      updateCell(row, col, current, states[i]);
+      if (i == playerIndex)
+      {
+        placePlayer(row, col);
+      }
+
+      row = nextRow;
+      col = nextCol;
+      jumped = jump;
+    }
   }
-  
-  public int getNextRow(int row, int col, Direction dir, boolean doPortalJump) {
-	  int nextRow = row;
-	  
-	  if(dir == Direction.UP) {
-		  if(doPortalJump == true) {
-			  nextRow = grid[row][col].getRowOffset() ;
-		  }else if(row == 0) {
-			  nextRow = getRows()- 1;
-		  }else {
-			  nextRow = row -1;
-		  }
-	  }else if(dir == Direction.DOWN) {
-		  if(doPortalJump == true) {
-			  nextRow = grid[row][col].getRowOffset();
-		  }else if(row == getRows()-1) {
-			  nextRow = 0;
-		  }else {
-			  nextRow = row + 1;
-		  }
-	  }
-	  
-	  return nextRow;
-	  
+
+  /**
+   * Returns a 64-bit Zobrist hash of the current position, covering the state
+   * of every cell (including which gates are closed) and the player's position.
+   * The hash is updated incrementally by each move, so this method takes constant
+   * time.  Games on the same level that reach the same position have the same hash.
+   * @return
+   *   hash of the current position
+   */
+  public long stateHash()
+  {
+    return hash;
   }
-  
-  public int getNextColumn(int row, int col, Direction dir, boolean doPortalJump) {
-	  int nextColumn = col;
-	 
-	  if(dir == Direction.LEFT) {
-		  if(doPortalJump == true) {
-			  nextColumn = grid[row][col].getColumnOffset();
-		  }else if(col == 0){
-			  nextColumn = getColumns()-1;
-		  }else {
-			  nextColumn = col-1;
-		  }
-	  }else if(dir == Direction.RIGHT) {
-		  if(doPortalJump == true) {
-			  nextColumn = grid[row][col].getColumnOffset();
-		  }else if(col == getColumns()-1) {
-			  nextColumn = 0;
-		  }else {
-			  nextColumn = col + 1;
-		  }
-	  }
-	  return nextColumn;
+
+  /**
+   * Determines whether the given game is in the same position as this one,
+   * that is, whether it has the same dimensions, the same state in every cell,
+   * and the player in the same cell.  The hashes are compared first, so games 
+   * in different positions are almost always distinguished in constant time.
+   * @param other
+   *   another game
+   * @return
+   *   true if both games are in the same position
+   */
+  public boolean sameState(Pearls other)
+  {
+    if (hash != other.hash || getRows() != other.getRows() || getColumns() != other.getColumns() 
+        || playerRow != other.playerRow || playerCol != other.playerCol)
+    {
+      return false;
+    }
+    for (int row = 0; row < getRows(); ++row)
+    {
+      for (int col = 0; col < getColumns(); ++col)
+      {
+        if (grid.getState(row, col) != other.grid.getState(row, col))
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Selects whether <code>move</code> should reuse preallocated scratch buffers
+   * instead of allocating a state array and MoveRecord objects on each move.
+   * When enabled, <code>move</code> returns null and the details of the 
+   * most recent move are available from <code>getLastMove</code>.
+   * @param reuse
+   *   true to reuse buffers, false to return MoveRecord arrays
+   */
+  public void setReuseMoveBuffers(boolean reuse)
+  {
+    if (!reuse)
+    {
+      buffer = null;
+    }
+    else if (buffer == null)
+    {
+      buffer = new MoveBuffer(getRows() + getColumns());
+    }
+  }
+
+  /**
+   * Returns the buffer describing the most recent move, if
+   * buffers are being reused; see <code>setReuseMoveBuffers</code>.
+   * The contents are only valid until the next move.
+   * @return
+   *   buffer for the most recent move, or null if buffers are not reused
+   */
+  public MoveBuffer getLastMove()
+  {
+    return buffer;
+  }
+
+  /**
+   * Enables undo and redo, retaining the given number of most recent moves.
+   * The storage for their cell changes grows as needed, so every one of
+   * them can be undone.  A limit of zero disables undo and discards the history.
+   * @param maxMoves
+   *   maximum number of moves that can be undone
+   */
+  public void setUndoLimit(int maxMoves)
+  {
+    if (maxMoves <= 0)
+    {
+      journal = null;
+    }
+    else
+    {
+      journal = new MoveJournal(maxMoves, 4 * (getRows() + getColumns()));
+    }
+  }
+
+  /**
+   * Determines whether there is a move that can be undone.
+   * @return
+   *   true if <code>undo</code> would take back a move
+   */
+  public boolean canUndo()
+  {
+    return journal != null && journal.undoCount() > 0;
+  }
+
+  /**
+   * Determines whether there is an undone move that can be redone.
+   * @return
+   *   true if <code>redo</code> would replay a move
+   */
+  public boolean canRedo()
+  {
+    return journal != null && journal.redoCount() > 0;
+  }
+
+  /**
+   * Takes back the most recent move, restoring only the cells it changed,
+   * the player position, the score, and the move count.
+   * @return
+   *   true if a move was undone, false if there was nothing to undo
+   */
+  public boolean undo()
+  {
+    if (!canUndo())
+    {
+      return false;
+    }
+    long move = journal.undo();
+    int cols = getColumns();
+    removePlayer();
+    for (long p = journal.moveChangeEnd(move) - 1; p >= journal.changeStart(move); --p)
+    {
+      long change = journal.change(p);
+      int cell = MoveJournal.changeCell(change);
+      updateCell(cell / cols, cell % cols, MoveBuffer.STATES[MoveJournal.changeNew(change)], 
+          MoveBuffer.STATES[MoveJournal.changeOld(change)]);
+    }
+    int from = journal.playerFrom(move);
+    placePlayer(from / cols, from % cols);
+    score -= journal.pearls(move);
+    moveCount--;
+    return true;
+  }
+
+  /**
+   * Replays the most recently undone move.
+   * @return
+   *   true if a move was redone, false if there was nothing to redo
+   */
+  public boolean redo()
+  {
+    if (!canRedo())
+    {
+      return false;
+    }
+    long move = journal.redo();
+    int cols = getColumns();
+    removePlayer();
+    for (long p = journal.changeStart(move); p < journal.moveChangeEnd(move); ++p)
+    {
+      long change = journal.change(p);
+      int cell = MoveJournal.changeCell(change);
+      updateCell(cell / cols, cell % cols, MoveBuffer.STATES[MoveJournal.changeOld(change)], 
+          MoveBuffer.STATES[MoveJournal.changeNew(change)]);
+    }
+    int to = journal.playerTo(move);
+    placePlayer(to / cols, to % cols);
+    score += journal.pearls(move);
+    moveCount++;
+    return true;
+  }
+
+  /**
+   * Performs a move using the scratch buffer.  This is the same as
+   * <code>move</code>, except that the state sequence is walked only once and
+   * no objects are allocated.  The buffer must already hold the state
+   * sequence, as filled by <code>fillBuffer</code>.
+   * @param dir
+   *   direction of the move
+   */
+  private void moveWithBuffer(Direction dir)
+  {
+    int cols = getColumns();
+    util.moveBlocks(buffer);
+    int playerIndex = util.movePlayer(buffer, dir);
+
+    removePlayer();
+    for (int i = 0; i < buffer.length(); ++i)
+    {
+      int cell = buffer.getCell(i);
+      updateCell(cell / cols, cell % cols, buffer.getOriginalState(i), buffer.getState(i));
+    }
+    int cell = buffer.getCell(playerIndex);
+    placePlayer(cell / cols, cell % cols);
+  }
+
+  /**
+   * Fills the buffer with the state sequence for a move in the given
+   * direction, as <code>getStateSequence</code> does, without changing
+   * the grid.
+   * @param dir
+   *   direction of the move
+   * @throws EndlessPathException
+   *   if the path can never reach a boundary
+   */
+  private void fillBuffer(Direction dir)
+  {
+    int cols = getColumns();
+    buffer.clear();
+    int row = playerRow;
+    int col = playerCol;
+    State s = grid.getState(row, col);
+    buffer.add(row * cols + col, s);
+
+    boolean containsMovable = false;
+    boolean jumped = false;
+    do
+    {
+      boolean jump = s == State.PORTAL && !jumped;
+      if (jump)
+      {
+        int companion = grid.getCompanion(row, col);
+        row = companion / cols;
+        col = companion % cols;
+      }
+      else
+      {
+        int nextRow = getNextRow(row, col, dir, false);
+        col = getNextColumn(row, col, dir, false);
+        row = nextRow;
+      }
+      jumped = jump;
+      s = grid.getState(row, col);
+      buffer.add(row * cols + col, s);
+      if (State.isMovable(s))
+      {
+        containsMovable = true;
+      }
+      checkPathLength(buffer.length(), dir);
+    } while (!State.isBoundary(s, containsMovable));
+  }
+
+  /**
+   * Throws an exception if a path has grown too long to ever reach a boundary.
+   * The walk is determined by the cell, whether it just jumped through a portal
+   * and whether it has passed a movable block, so a path longer than four times
+   * the number of cells must be repeating itself.
+   * @param length
+   *   number of cells in the path so far
+   * @param dir
+   *   direction of the move
+   * @throws EndlessPathException
+   *   if the path can never end
+   */
+  private void checkPathLength(int length, Direction dir)
+  {
+    if (length > 4 * getRows() * getColumns() + 1)
+    {
+      throw new EndlessPathException("Path " + dir + " from (" + playerRow + ", " + playerCol + 
+          ") never reaches a boundary");
+    }
+  }
+
+  /**
+   * Sets the state of one cell, keeping the pearl count up to date.
+   * @param row
+   *   row of the cell
+   * @param col
+   *   column of the cell
+   * @param oldState
+   *   the cell's current state
+   * @param newState
+   *   new state for the cell
+   */
+  private void updateCell(int row, int col, State oldState, State newState)
+  {
+    if (oldState == State.PEARL)
+    {
+      currentpearls -= 1;
+    }
+    if (newState == State.PEARL)
+    {
+      currentpearls += 1;
+    }
+    grid.setState(row, col, newState);
+    int cell = row * getColumns() + col;
+    hash ^= Zobrist.key(cell, oldState.ordinal()) ^ Zobrist.key(cell, newState.ordinal());
+    if (journal != null && journal.isRecording() && oldState != newState)
+    {
+      journal.recordChange(cell, oldState.ordinal(), newState.ordinal());
+    }
+  }
+
+  /**
+   * Removes the player from its current cell.
+   */
+  private void removePlayer()
+  {
+    grid.setPlayerPresent(playerRow, playerCol, false);
+    hash ^= Zobrist.playerKey(playerRow * getColumns() + playerCol);
+  }
+
+  /**
+   * Puts the player in the given cell, which must already have its new state.
+   * The caller is responsible for first calling <code>removePlayer</code>.
+   * @param row
+   *   row of the player's new cell
+   * @param col
+   *   column of the player's new cell
+   */
+  private void placePlayer(int row, int col)
+  {
+    grid.setPlayerPresent(row, col, true);
+    playerRow = row;
+    playerCol = col;
+    playerOnSpikes = State.isSpikes(grid.getState(row, col));
+    hash ^= Zobrist.playerKey(row * getColumns() + col);
+  }
+
+  /**
+   * Returns the row of the next cell in a state sequence, wrapping around
+   * the edges of the grid.  If <code>doPortalJump</code> is true, the next row is
+   * the row of the companion portal.
+   * @param row
+   *   current row
+   * @param col
+   *   current column
+   * @param dir
+   *   direction of the move
+   * @param doPortalJump
+   *   true if the current cell is a portal to be jumped through
+   * @return
+   *   row of the next cell
+   */
+  public int getNextRow(int row, int col, Direction dir, boolean doPortalJump)
+  {
+    if (doPortalJump)
+    {
+      return grid.getCompanion(row, col) / getColumns();
+    }
+    if (dir == Direction.UP)
+    {
+      return row == 0 ? getRows() - 1 : row - 1;
+    }
+    if (dir == Direction.DOWN)
+    {
+      return row == getRows() - 1 ? 0 : row + 1;
+    }
+    return row;
+  }
+
+  /**
+   * Returns the column of the next cell in a state sequence, wrapping around
+   * the edges of the grid.  If <code>doPortalJump</code> is true, the next column is
+   * the column of the companion portal.
+   * @param row
+   *   current row
+   * @param col
+   *   current column
+   * @param dir
+   *   direction of the move
+   * @param doPortalJump
+   *   true if the current cell is a portal to be jumped through
+   * @return
+   *   column of the next cell
+   */
+  public int getNextColumn(int row, int col, Direction dir, boolean doPortalJump)
+  {
+    if (doPortalJump)
+    {
+      return grid.getCompanion(row, col) % getColumns();
+    }
+    if (dir == Direction.LEFT)
+    {
+      return col == 0 ? getColumns() - 1 : col - 1;
+    }
+    if (dir == Direction.RIGHT)
+    {
+      return col == getColumns() - 1 ? 0 : col + 1;
+    }
+    return col;
   }
+
  public int getMoves() {
-	 
+
 	 return moveCount;
-	 
+
  }
 
 }
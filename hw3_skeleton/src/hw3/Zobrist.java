@@ -0,0 +1,59 @@
+package hw3;
+
+/**
+ * Zobrist keys for hashing Pearls positions.  Rather than storing a 
+ * table with one random key per cell and state, which would be far larger
+ * than a packed grid, each key is generated on demand by mixing the
+ * cell index and state ordinal with the SplitMix64 finalizer.  The keys are
+ * the same for every game, so positions of two games on the same level
+ * can be compared by hash.
+ */
+public class Zobrist
+{
+  /**
+   * Pseudo-state used for the player's key, beyond any State ordinal.
+   */
+  private static final int PLAYER = 15;
+
+  private Zobrist()
+  {
+    // static methods only
+  }
+
+  /**
+   * Returns the key for the given cell having the given state.
+   * @param cell
+   *   row-major index of the cell
+   * @param ordinal
+   *   ordinal of the cell's State
+   * @return
+   *   64-bit key
+   */
+  public static long key(int cell, int ordinal)
+  {
+    return mix(((long) cell << 4) | ordinal);
+  }
+
+  /**
+   * Returns the key for the player being in the given cell.
+   * @param cell
+   *   row-major index of the cell
+   * @return
+   *   64-bit key
+   */
+  public static long playerKey(int cell)
+  {
+    return mix(((long) cell << 4) | PLAYER);
+  }
+
+  /**
+   * SplitMix64 finalizer.
+   */
+  private static long mix(long z)
+  {
+    z += 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,218 @@
+package hw3.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates random Pearls levels in the string format accepted by
+ * <code>StringUtil.createFromStringArray</code>, for benchmarking.  The
+ * outer rows and columns are walls, so every straight path reaches a
+ * boundary.  Portal pairs whose paths could cycle forever are removed,
+ * so every move on a generated board terminates.
+ */
+public class BoardGenerator
+{
+  // fixed densities for the cell types that are not parameters
+  private static final double WALL_DENSITY = 0.08;
+  private static final double GATE_DENSITY = 0.02;
+  private static final double SPIKES_DENSITY = 0.01;
+
+  private static final char[] SPIKES = {'<', '>', 'v', '^', '*'};
+  private static final int[][] STEPS = {{0, -1}, {0, 1}, {-1, 0}, {1, 0}};
+
+  private final Random rand;
+  private final int rows;
+  private final int cols;
+  private char[][] board;
+
+  /**
+   * Constructs a generator for boards of the given size.
+   * @param rows
+   *   number of rows, at least 3
+   * @param cols
+   *   number of columns, at least 3
+   * @param seed
+   *   seed for the random number generator
+   */
+  public BoardGenerator(int rows, int cols, long seed)
+  {
+    if (rows < 3 || cols < 3)
+    {
+      throw new IllegalArgumentException("Board must be at least 3 by 3");
+    }
+    this.rows = rows;
+    this.cols = cols;
+    rand = new Random(seed);
+  }
+
+  /**
+   * Generates a board.  Each density is the fraction of interior cells
+   * given that kind of content.
+   * @param portalDensity
+   *   fraction of cells that are portals
+   * @param movableDensity
+   *   fraction of cells that are movable blocks
+   * @param pearlDensity
+   *   fraction of cells that are pearls
+   * @return
+   *   string array describing the board, one string per row
+   */
+  public String[] generate(double portalDensity, double movableDensity, double pearlDensity)
+  {
+    board = new char[rows][cols];
+    ArrayList<int[]> empty = new ArrayList<>();
+    for (int row = 0; row < rows; ++row)
+    {
+      for (int col = 0; col < cols; ++col)
+      {
+        if (row == 0 || col == 0 || row == rows - 1 || col == cols - 1)
+        {
+          board[row][col] = '#';
+          continue;
+        }
+        double x = rand.nextDouble();
+        if ((x -= WALL_DENSITY) < 0)
+        {
+          board[row][col] = '#';
+        }
+        else if ((x -= pearlDensity) < 0)
+        {
+          board[row][col] = '@';
+        }
+        else if ((x -= movableDensity) < 0)
+        {
+          board[row][col] = rand.nextBoolean() ? '+' : '-';
+        }
+        else if ((x -= GATE_DENSITY) < 0)
+        {
+          board[row][col] = 'o';
+        }
+        else if ((x -= SPIKES_DENSITY) < 0)
+        {
+          board[row][col] = SPIKES[rand.nextInt(SPIKES.length)];
+        }
+        else
+        {
+          board[row][col] = '.';
+          empty.add(new int[] {row, col});
+        }
+      }
+    }
+
+    // player and portals go in randomly chosen empty cells
+    int portals = (int) (portalDensity * (rows - 2) * (cols - 2)) & ~1;
+    portals = Math.min(portals, (empty.size() - 1) & ~1);
+    for (int i = 0; i <= portals && !empty.isEmpty(); ++i)
+    {
+      int[] cell = empty.remove(rand.nextInt(empty.size()));
+      board[cell[0]][cell[1]] = i == portals ? '$' : (char) ('A' + (i / 2) % 26);
+    }
+    removeCyclicPortals();
+
+    String[] ret = new String[rows];
+    for (int row = 0; row < rows; ++row)
+    {
+      ret[row] = new String(board[row]);
+    }
+    return ret;
+  }
+
+  /**
+   * Removes portal pairs until no path leaving a portal can cycle forever.
+   * Any endless path must eventually keep coming out of the same portal, so
+   * it is enough to follow the path out of every portal in every direction.
+   * Movable blocks and open gates are treated as passable, since they may
+   * move or stay open.
+   */
+  private void removeCyclicPortals()
+  {
+    boolean changed = true;
+    while (changed)
+    {
+      changed = false;
+      int[] companions = pairPortals();
+      for (int cell = 0; cell < companions.length && !changed; ++cell)
+      {
+        if (companions[cell] < 0)
+        {
+          continue;
+        }
+        for (int[] step : STEPS)
+        {
+          if (!terminates(cell, step, companions))
+          {
+            board[cell / cols][cell % cols] = '.';
+            board[companions[cell] / cols][companions[cell] % cols] = '.';
+            changed = true;
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the companion of each cell's portal by row-major index, pairing
+   * portals as <code>StringUtil.createFromStringArray</code> does, or -1 for other cells.
+   */
+  private int[] pairPortals()
+  {
+    int[] companions = new int[rows * cols];
+    int[] unmatched = new int['Z' - 'A' + 1];
+    Arrays.fill(unmatched, -1);
+    for (int cell = 0; cell < companions.length; ++cell)
+    {
+      companions[cell] = -1;
+      char ch = board[cell / cols][cell % cols];
+      if (ch >= 'A' && ch <= 'Z')
+      {
+        int other = unmatched[ch - 'A'];
+        if (other < 0)
+        {
+          unmatched[ch - 'A'] = cell;
+        }
+        else
+        {
+          companions[cell] = other;
+          companions[other] = cell;
+          unmatched[ch - 'A'] = -1;
+        }
+      }
+    }
+    return companions;
+  }
+
+  /**
+   * Follows the path that comes out of the portal at the given cell in the
+   * given direction, and returns true if it reaches a boundary.
+   */
+  private boolean terminates(int cell, int[] step, int[] companions)
+  {
+    int row = cell / cols;
+    int col = cell % cols;
+    boolean jumped = true;
+    for (int i = 0; i <= 2 * rows * cols; ++i)
+    {
+      if (companions[row * cols + col] >= 0 && !jumped)
+      {
+        int other = companions[row * cols + col];
+        row = other / cols;
+        col = other % cols;
+        jumped = true;
+      }
+      else
+      {
+        row = (row + step[0] + rows) % rows;
+        col = (col + step[1] + cols) % cols;
+        jumped = false;
+      }
+      char ch = board[row][col];
+      if (ch == '#' || ch == 'x' || ch == '<' || ch == '>' || ch == 'v' || ch == '^' || ch == '*')
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,305 @@
+package hw3.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import api.Direction;
+import api.State;
+import api.StringUtil;
+import hw3.PackedGridStorage;
+import hw3.PearlUtil;
+import hw3.Pearls;
+
+/**
+ * Benchmarks for the hot paths of the Pearls engine: building state sequences,
+ * the three <code>PearlUtil</code> algorithms, single moves, complete random games,
+ * and parsing levels.  Boards come from <code>BoardGenerator</code> and are
+ * parameterized by size, portal density, movable-block density and pearl density.
+ * <p>
+ * Each benchmark is warmed up and then run for several timed iterations on
+ * the current thread.  The report gives throughput and, using the per-thread
+ * allocation counter of the JVM, the allocation per operation and the
+ * allocation rate.
+ * <p>
+ * Usage: <code>EngineBenchmarks [sizes [portalDensities [movableDensities [pearlDensities]]]]</code>,
+ * where each argument is a comma-separated list, e.g. <code>EngineBenchmarks 64,512 0,0.01 0.02 0.1</code>.
+ */
+public class EngineBenchmarks
+{
+  private static final long WARMUP_NANOS = 300000000L;
+  private static final long ITERATION_NANOS = 500000000L;
+  private static final int ITERATIONS = 3;
+
+  /**
+   * Random directions, indexed by a running counter.
+   */
+  private static final Direction[] DIRS = new Direction[4096];
+
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  /**
+   * Results of the operations are accumulated here so the JIT cannot discard them.
+   */
+  private static volatile long sink;
+
+  /**
+   * One benchmarked operation.
+   */
+  private interface Op
+  {
+    /**
+     * Performs the operation once.
+     * @return
+     *   any value depending on the result of the operation
+     */
+    long run();
+  }
+
+  /**
+   * Runs the benchmarks over every combination of the given parameters.
+   * @param args
+   *   comma-separated lists of sizes, portal densities, movable densities
+   *   and pearl densities
+   */
+  public static void main(String[] args)
+  {
+    int[] sizes = parseInts(args.length > 0 ? args[0] : "32,256");
+    double[] portals = parseDoubles(args.length > 1 ? args[1] : "0,0.01");
+    double[] movables = parseDoubles(args.length > 2 ? args[2] : "0,0.02");
+    double[] pearls = parseDoubles(args.length > 3 ? args[3] : "0.1");
+
+    Random rand = new Random(42);
+    for (int i = 0; i < DIRS.length; ++i)
+    {
+      DIRS[i] = DIRECTIONS[rand.nextInt(4)];
+    }
+
+    System.out.printf("%-28s %6s %7s %7s %6s %14s %12s %12s%n",
+        "benchmark", "size", "portal", "movable", "pearl", "ops/s", "bytes/op", "MB/s alloc");
+    for (int size : sizes)
+    {
+      for (double portal : portals)
+      {
+        for (double movable : movables)
+        {
+          for (double pearl : pearls)
+          {
+            String[] board = new BoardGenerator(size, size, 1).generate(portal, movable, pearl);
+            String params = String.format("%6d %7.3f %7.3f %6.3f", size, portal, movable, pearl);
+            runAll(board, params);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs every benchmark on the given board.
+   */
+  private static void runAll(final String[] board, String params)
+  {
+    final PearlUtil util = new PearlUtil();
+
+    // state sequences in each direction from the player's start, as templates
+    // that are copied into a work array before each PearlUtil operation
+    Pearls start = new Pearls(board, util);
+    final State[][] sequences = new State[4][];
+    final State[][] afterBlocks = new State[4][];
+    final State[][] work = new State[4][];
+    for (int d = 0; d < 4; ++d)
+    {
+      sequences[d] = start.getStateSequence(DIRECTIONS[d]);
+      afterBlocks[d] = sequences[d].clone();
+      util.moveBlocks(afterBlocks[d], null);
+      work[d] = new State[sequences[d].length];
+    }
+
+    final Pearls seqGame = new Pearls(board, util);
+    report("getStateSequence", params, new Op()
+    {
+      int i;
+      public long run()
+      {
+        return seqGame.getStateSequence(DIRS[i++ & 4095]).length;
+      }
+    });
+
+    report("PearlUtil.moveBlocks", params, new Op()
+    {
+      int i;
+      public long run()
+      {
+        int d = i++ & 3;
+        System.arraycopy(sequences[d], 0, work[d], 0, work[d].length);
+        util.moveBlocks(work[d], null);
+        return work[d][0].ordinal();
+      }
+    });
+
+    report("PearlUtil.movePlayer", params, new Op()
+    {
+      int i;
+      public long run()
+      {
+        int d = i++ & 3;
+        System.arraycopy(afterBlocks[d], 0, work[d], 0, work[d].length);
+        return util.movePlayer(work[d], null, DIRECTIONS[d]);
+      }
+    });
+
+    report("PearlUtil.collectPearls", params, new Op()
+    {
+      int i;
+      public long run()
+      {
+        int d = i++ & 3;
+        System.arraycopy(sequences[d], 0, work[d], 0, work[d].length);
+        util.collectPearls(work[d], null, 0, work[d].length - 1);
+        return work[d][0].ordinal();
+      }
+    });
+
+    report("move (MoveRecord)", params, singleMove(new Pearls(board, util)));
+    Pearls buffered = new Pearls(new PackedGridStorage(board), util);
+    buffered.setReuseMoveBuffers(true);
+    report("move (packed, buffers)", params, singleMove(buffered));
+
+    final int maxMoves = 4 * board.length;
+    report("random game (MoveRecord)", params, new Op()
+    {
+      int i;
+      public long run()
+      {
+        Pearls game = new Pearls(board, util);
+        int moves = 0;
+        while (!game.isOver() && moves < maxMoves)
+        {
+          game.move(DIRS[i++ & 4095]);
+          moves += 1;
+        }
+        return game.getScore();
+      }
+    });
+    report("random game (packed)", params, new Op()
+    {
+      int i;
+      public long run()
+      {
+        Pearls game = new Pearls(new PackedGridStorage(board), util);
+        game.setReuseMoveBuffers(true);
+        int moves = 0;
+        while (!game.isOver() && moves < maxMoves)
+        {
+          game.move(DIRS[i++ & 4095]);
+          moves += 1;
+        }
+        return game.getScore();
+      }
+    });
+
+    report("parse createFromStringArray", params, new Op()
+    {
+      public long run()
+      {
+        return StringUtil.createFromStringArray(board).length;
+      }
+    });
+    report("parse PackedGridStorage", params, new Op()
+    {
+      public long run()
+      {
+        return new PackedGridStorage(board).getRows();
+      }
+    });
+  }
+
+  /**
+   * Returns an operation making one random move in the given game.  A move
+   * that ends the game is undone so the game can continue indefinitely.
+   */
+  private static Op singleMove(final Pearls game)
+  {
+    game.setUndoLimit(1);
+    return new Op()
+    {
+      int i;
+      public long run()
+      {
+        game.move(DIRS[i++ & 4095]);
+        if (game.isOver())
+        {
+          game.undo();
+        }
+        return game.getCurrentRow();
+      }
+    };
+  }
+
+  /**
+   * Warms up and measures one operation, then prints a line of results.
+   */
+  private static void report(String name, String params, Op op)
+  {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long id = Thread.currentThread().getId();
+
+    long sum = 0;
+    long end = System.nanoTime() + WARMUP_NANOS;
+    while (System.nanoTime() < end)
+    {
+      sum += op.run();
+    }
+
+    long ops = 0;
+    long nanos = 0;
+    long bytes = 0;
+    for (int iteration = 0; iteration < ITERATIONS; ++iteration)
+    {
+      long allocatedBefore = threads.getThreadAllocatedBytes(id);
+      long before = System.nanoTime();
+      end = before + ITERATION_NANOS;
+      long now;
+      do
+      {
+        // check the clock once per batch to keep its cost out of fast operations
+        for (int k = 0; k < 64; ++k)
+        {
+          sum += op.run();
+        }
+        ops += 64;
+        now = System.nanoTime();
+      } while (now < end);
+      nanos += now - before;
+      bytes += threads.getThreadAllocatedBytes(id) - allocatedBefore;
+    }
+    sink += sum;
+
+    double opsPerSecond = ops * 1e9 / nanos;
+    double bytesPerOp = (double) bytes / ops;
+    double mbPerSecond = bytes * 1e9 / nanos / (1024 * 1024);
+    System.out.printf("%-28s %s %14.0f %12.1f %12.1f%n", name, params, opsPerSecond, bytesPerOp, mbPerSecond);
+  }
+
+  private static int[] parseInts(String list)
+  {
+    String[] parts = list.split(",");
+    int[] ret = new int[parts.length];
+    for (int i = 0; i < parts.length; ++i)
+    {
+      ret[i] = Integer.parseInt(parts[i].trim());
+    }
+    return ret;
+  }
+
+  private static double[] parseDoubles(String list)
+  {
+    String[] parts = list.split(",");
+    double[] ret = new double[parts.length];
+    for (int i = 0; i < parts.length; ++i)
+    {
+      ret[i] = Double.parseDouble(parts[i].trim());
+    }
+    return ret;
+  }
+}
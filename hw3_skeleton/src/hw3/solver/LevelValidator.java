@@ -0,0 +1,329 @@
+package hw3.solver;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import api.Cell;
+import api.Direction;
+import api.State;
+import api.StringUtil;
+import hw3.EndlessPathException;
+
+/**
+ * Command-line batch validator for a directory of Pearls level files.
+ * Each file holds the rows of one level, one row per line, in the format
+ * used by the levels in <code>ConsoleUI</code>.  For every level the validator
+ * checks that the rows have equal length, that there is exactly one player,
+ * and that every portal has a companion, and then runs a bounded search with
+ * <code>PearlsSolver</code>.  A level where some move would wrap around the
+ * grid forever is reported as invalid.  One CSV line per level is written to
+ * standard output as soon as that level is finished.  A level that fails
+ * unexpectedly is reported with status ERROR, and the validator then exits
+ * with a nonzero status.
+ * <p>
+ * Levels are processed in parallel on a ForkJoinPool, which is shared with
+ * the solvers.  The directory is read lazily and only a bounded number of
+ * levels are in progress at once, so arbitrarily large packs can be validated.
+ * <p>
+ * Usage: <code>LevelValidator directory [maxDepth] [timeoutMillis] [threads]</code>
+ */
+public class LevelValidator
+{
+  /**
+   * Header line for the CSV output.
+   */
+  public static final String CSV_HEADER =
+      "file,status,rows,columns,pearls,moves,solution,nodes,millis,peak_table,message";
+
+  private final int maxDepth;
+  private final long timeoutMillis;
+  private final ForkJoinPool pool;
+  private final PrintWriter out;
+
+  /**
+   * Limits the number of levels read but not yet reported.
+   */
+  private final Semaphore inFlight;
+
+  /**
+   * Number of levels reported with status ERROR.
+   */
+  private final AtomicInteger errors = new AtomicInteger();
+
+  /**
+   * Constructs a validator.
+   * @param maxDepth
+   *   largest number of moves the solver considers
+   * @param timeoutMillis
+   *   time budget for solving each level, in milliseconds
+   * @param pool
+   *   pool on which to validate and solve the levels
+   * @param out
+   *   destination for the CSV lines
+   */
+  public LevelValidator(int maxDepth, long timeoutMillis, ForkJoinPool pool, PrintWriter out)
+  {
+    this.maxDepth = maxDepth;
+    this.timeoutMillis = timeoutMillis;
+    this.pool = pool;
+    this.out = out;
+    inFlight = new Semaphore(2 * pool.getParallelism());
+  }
+
+  /**
+   * Validates every regular file in the given directory, writing the header
+   * and then one CSV line per level.  Returns when all levels are done.
+   * @param dir
+   *   directory of level files
+   * @throws IOException
+   *   if the directory cannot be read
+   * @throws InterruptedException
+   *   if interrupted while waiting for levels to finish
+   */
+  public void validateDirectory(Path dir) throws IOException, InterruptedException
+  {
+    synchronized (out)
+    {
+      out.println(CSV_HEADER);
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+    {
+      for (final Path file : files)
+      {
+        if (!Files.isRegularFile(file))
+        {
+          continue;
+        }
+        inFlight.acquire();
+        pool.execute(new Runnable()
+        {
+          public void run()
+          {
+            try
+            {
+              String line;
+              try
+              {
+                line = validate(file);
+              }
+              catch (Throwable t)
+              {
+                // one broken level must not stop the rest of the pack
+                errors.incrementAndGet();
+                line = error(file.getFileName().toString(), t);
+              }
+              report(line);
+            }
+            finally
+            {
+              inFlight.release();
+            }
+          }
+        });
+      }
+    }
+
+    // wait for the last levels to be reported
+    int permits = 2 * pool.getParallelism();
+    inFlight.acquire(permits);
+    inFlight.release(permits);
+    out.flush();
+  }
+
+  /**
+   * Returns the number of levels reported with status ERROR so far.
+   * @return
+   *   number of levels that failed unexpectedly
+   */
+  public int getErrorCount()
+  {
+    return errors.get();
+  }
+
+  /**
+   * Validates and solves one level file, returning its CSV line.
+   * @param file
+   *   level file
+   * @return
+   *   CSV line describing the level
+   */
+  public String validate(Path file)
+  {
+    String name = file.getFileName().toString();
+    List<String> lines;
+    try
+    {
+      lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+    catch (IOException e)
+    {
+      return invalid(name, 0, 0, "cannot read file: " + e.getMessage());
+    }
+
+    // ignore trailing blank lines
+    int height = lines.size();
+    while (height > 0 && lines.get(height - 1).isEmpty())
+    {
+      height -= 1;
+    }
+    if (height == 0)
+    {
+      return invalid(name, 0, 0, "empty level");
+    }
+    String[] rows = lines.subList(0, height).toArray(new String[height]);
+    int width = rows[0].length();
+    for (int row = 0; row < height; ++row)
+    {
+      if (rows[row].length() != width)
+      {
+        return invalid(name, height, width, "row " + row + " has length " + rows[row].length() + ", expected " + width);
+      }
+    }
+    if (width == 0)
+    {
+      return invalid(name, height, width, "empty level");
+    }
+
+    Cell[][] grid = StringUtil.createFromStringArray(rows);
+    int players = 0;
+    int pearls = 0;
+    for (int row = 0; row < height; ++row)
+    {
+      for (int col = 0; col < width; ++col)
+      {
+        Cell c = grid[row][col];
+        if (c.isPlayerPresent())
+        {
+          players += 1;
+        }
+        if (c.getState() == State.PEARL)
+        {
+          pearls += 1;
+        }
+        if (c.getState() == State.PORTAL && c.getRowOffset() == 0 && c.getColumnOffset() == 0)
+        {
+          return invalid(name, height, width, "portal '" + rows[row].charAt(col) + "' at (" + row + ", " + col + ") has no companion");
+        }
+      }
+    }
+    if (players != 1)
+    {
+      return invalid(name, height, width, "found " + players + " players, expected 1");
+    }
+
+    SolverResult result;
+    try
+    {
+      result = new PearlsSolver(rows, pool).solve(maxDepth, timeoutMillis);
+    }
+    catch (EndlessPathException e)
+    {
+      return invalid(name, height, width, e.getMessage());
+    }
+    String status = result.isSolved() ? "SOLVED" : result.isTimedOut() ? "TIMEOUT" : "UNSOLVED";
+    String moves = "";
+    String solution = "";
+    if (result.isSolved())
+    {
+      StringBuilder sb = new StringBuilder();
+      for (Direction d : result.getMoves())
+      {
+        sb.append(d.name().charAt(0));
+      }
+      moves = "" + result.getMoves().length;
+      solution = sb.toString();
+    }
+    String message = result.isSolved() ? "" : "searched " + result.getDepthSearched() + " moves";
+    return csv(name, status, "" + height, "" + width, "" + pearls, moves, solution, "" + result.getNodes(),
+        "" + TimeUnit.NANOSECONDS.toMillis(result.getElapsedNanos()), "" + result.getPeakTableSize(), message);
+  }
+
+  /**
+   * Writes one CSV line to the output.
+   */
+  private void report(String line)
+  {
+    synchronized (out)
+    {
+      out.println(line);
+      out.flush();
+    }
+  }
+
+  private static String invalid(String name, int height, int width, String message)
+  {
+    return csv(name, "INVALID", "" + height, "" + width, "", "", "", "", "", "", message);
+  }
+
+  private static String error(String name, Throwable t)
+  {
+    return csv(name, "ERROR", "", "", "", "", "", "", "", "", t.toString());
+  }
+
+  /**
+   * Joins the given fields into a CSV line, quoting fields where needed.
+   */
+  private static String csv(String... fields)
+  {
+    ArrayList<String> quoted = new ArrayList<>();
+    for (String f : fields)
+    {
+      if (f.indexOf(',') >= 0 || f.indexOf('"') >= 0 || f.indexOf('\n') >= 0)
+      {
+        f = "\"" + f.replace("\"", "\"\"") + "\"";
+      }
+      quoted.add(f);
+    }
+    return String.join(",", quoted);
+  }
+
+  /**
+   * Entry point for the batch validator.
+   * @param args
+   *   directory, then optionally the maximum depth, the per-level
+   *   timeout in milliseconds, and the number of threads
+   * @throws Exception
+   *   if the directory cannot be read
+   */
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length < 1)
+    {
+      System.err.println("Usage: LevelValidator directory [maxDepth] [timeoutMillis] [threads]");
+      System.exit(2);
+    }
+    Path dir = Paths.get(args[0]);
+    int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+    long timeoutMillis = args.length > 2 ? Long.parseLong(args[2]) : 10000;
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    PrintWriter out = new PrintWriter(System.out);
+    LevelValidator validator = new LevelValidator(maxDepth, timeoutMillis, pool, out);
+    try
+    {
+      validator.validateDirectory(dir);
+    }
+    finally
+    {
+      pool.shutdown();
+      out.flush();
+    }
+    if (validator.getErrorCount() > 0)
+    {
+      System.err.println(validator.getErrorCount() + " level(s) failed with an error");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,325 @@
+package hw3.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import api.Direction;
+import hw3.PearlUtil;
+import hw3.Pearls;
+import ui.ConsoleUI;
+
+/**
+ * Finds a shortest winning move sequence for a Pearls level.  The search
+ * is an iterative deepening depth-first search (IDA* with the bound "one more
+ * move while pearls remain") run in parallel on a ForkJoinPool.  The top few
+ * levels of the search tree are split into separate tasks, each of which
+ * replays its move prefix on its own <code>Pearls</code> instance and then
+ * searches depth-first using <code>move</code> and <code>undo</code>.
+ * <p>
+ * A concurrent transposition table, keyed by <code>Pearls.stateHash</code>,
+ * records the fewest moves with which each position has been reached in the
+ * current iteration, so positions reached again by a path that is no shorter
+ * are not searched again.  Moves that leave the position unchanged are skipped,
+ * and moves that land the player on deadly spikes are pruned immediately.
+ */
+public class PearlsSolver
+{
+  /**
+   * Search tree levels above this depth are split into separate tasks.
+   */
+  private static final int SPLIT_DEPTH = 3;
+
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  /**
+   * String description of the level, as accepted by the Pearls constructor.
+   */
+  private final String[] level;
+
+  /**
+   * Pool on which the search runs.
+   */
+  private final ForkJoinPool pool;
+
+  // State of the current search, shared by all tasks
+  private ConcurrentHashMap<Long, Integer> table;
+  private LongAdder nodes;
+  private AtomicReference<Direction[]> solution;
+
+  /**
+   * Time, as given by System.nanoTime, at which the search gives up,
+   * or zero if there is no time limit.
+   */
+  private long deadline;
+  private volatile boolean timedOut;
+
+  /**
+   * Constructs a solver for the given level using the common ForkJoinPool.
+   * @param level
+   *   string array describing the level
+   */
+  public PearlsSolver(String[] level)
+  {
+    this(level, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a solver for the given level using the given pool.
+   * @param level
+   *   string array describing the level
+   * @param pool
+   *   pool on which to run the search
+   */
+  public PearlsSolver(String[] level, ForkJoinPool pool)
+  {
+    this.level = level.clone();
+    this.pool = pool;
+  }
+
+  /**
+   * Searches for a shortest winning move sequence of at most
+   * <code>maxDepth</code> moves.
+   * @param maxDepth
+   *   largest number of moves to consider
+   * @return
+   *   result of the search
+   */
+  public SolverResult solve(int maxDepth)
+  {
+    return solve(maxDepth, 0);
+  }
+
+  /**
+   * Searches for a shortest winning move sequence of at most
+   * <code>maxDepth</code> moves, giving up after the given time.
+   * @param maxDepth
+   *   largest number of moves to consider
+   * @param timeoutMillis
+   *   time budget in milliseconds, or zero for no limit
+   * @return
+   *   result of the search
+   */
+  public SolverResult solve(int maxDepth, long timeoutMillis)
+  {
+    long start = System.nanoTime();
+    deadline = timeoutMillis > 0 ? start + timeoutMillis * 1000000L : 0;
+    timedOut = false;
+    nodes = new LongAdder();
+    solution = new AtomicReference<>();
+    int peakTableSize = 0;
+    int depth = 0;
+
+    Pearls root = newGame(maxDepth);
+    if (root.won())
+    {
+      solution.set(new Direction[0]);
+    }
+    else if (!root.isOver())
+    {
+      while (solution.get() == null && !timedOut && depth < maxDepth)
+      {
+        depth += 1;
+        table = new ConcurrentHashMap<>();
+        table.put(root.stateHash(), 0);
+        pool.invoke(new SearchTask(new Direction[0], depth, maxDepth));
+        peakTableSize = Math.max(peakTableSize, table.size());
+      }
+      table = null;
+    }
+    boolean incomplete = timedOut && solution.get() == null;
+    return new SolverResult(solution.get(), nodes.sum(), System.nanoTime() - start, peakTableSize, 
+        incomplete ? depth - 1 : depth, incomplete);
+  }
+
+  /**
+   * Creates a game for the level with undo enabled for the given number
+   * of moves and reusable move buffers.  The journal keeps every change of
+   * the last maxDepth moves, so the search can always back out of its path.
+   */
+  private Pearls newGame(int maxDepth)
+  {
+    Pearls game = new Pearls(level, new PearlUtil());
+    game.setReuseMoveBuffers(true);
+    game.setUndoLimit(Math.max(maxDepth, 1));
+    return game;
+  }
+
+  /**
+   * Undoes the last move of the game.  The search cannot continue from a
+   * position it cannot back out of, so failure is an error rather than a
+   * result.
+   */
+  private static void undo(Pearls game)
+  {
+    if (!game.undo())
+    {
+      throw new IllegalStateException("Undo history lost during search");
+    }
+  }
+
+  /**
+   * Determines whether the search should stop, either because a solution
+   * has been found or because the time budget has run out.
+   */
+  private boolean shouldStop()
+  {
+    if (solution.get() != null || timedOut)
+    {
+      return true;
+    }
+    if (deadline != 0 && System.nanoTime() - deadline > 0)
+    {
+      timedOut = true;
+    }
+    return timedOut;
+  }
+
+  /**
+   * Records that the given position was reached with the given number of
+   * moves.  Returns false if it had already been reached with no more moves,
+   * in which case it does not need to be searched again.
+   */
+  private boolean visit(long hash, int moves)
+  {
+    Long key = hash;
+    while (true)
+    {
+      Integer old = table.get(key);
+      if (old != null && old <= moves)
+      {
+        return false;
+      }
+      if (old == null ? table.putIfAbsent(key, moves) == null : table.replace(key, old, moves))
+      {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Tries the given move.  If it wins, the solution is recorded.  Returns true if
+   * the resulting position should be searched further, in which case the move
+   * has not been undone; otherwise the move has been undone.
+   */
+  private boolean tryMove(Pearls game, Direction[] path, int moves, Direction dir, int bound)
+  {
+    long before = game.stateHash();
+    game.move(dir);
+    nodes.increment();
+    path[moves] = dir;
+
+    boolean searchFurther = false;
+    if (game.won())
+    {
+      solution.compareAndSet(null, Arrays.copyOf(path, moves + 1));
+    }
+    else if (!game.isOver() && game.stateHash() != before)
+    {
+      // the game is lost only by landing on deadly spikes, and a position
+      // with pearls left needs at least one more move
+      searchFurther = moves + 2 <= bound && visit(game.stateHash(), moves + 1);
+    }
+    if (!searchFurther)
+    {
+      undo(game);
+    }
+    return searchFurther;
+  }
+
+  /**
+   * Depth-first search below a position reached with the given number of moves.
+   */
+  private void search(Pearls game, Direction[] path, int moves, int bound)
+  {
+    for (Direction dir : DIRECTIONS)
+    {
+      if (shouldStop())
+      {
+        return;
+      }
+      if (tryMove(game, path, moves, dir, bound))
+      {
+        search(game, path, moves + 1, bound);
+        undo(game);
+      }
+    }
+  }
+
+  /**
+   * Task searching the subtree below a move prefix.  Near the root the
+   * task forks a subtask per move; deeper it searches sequentially.
+   */
+  private class SearchTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final Direction[] prefix;
+    private final int bound;
+    private final int maxDepth;
+
+    public SearchTask(Direction[] prefix, int bound, int maxDepth)
+    {
+      this.prefix = prefix;
+      this.bound = bound;
+      this.maxDepth = maxDepth;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (shouldStop())
+      {
+        return;
+      }
+      Pearls game = newGame(maxDepth);
+      for (Direction dir : prefix)
+      {
+        game.move(dir);
+      }
+      Direction[] path = Arrays.copyOf(prefix, bound);
+      int moves = prefix.length;
+
+      if (moves >= SPLIT_DEPTH)
+      {
+        search(game, path, moves, bound);
+        return;
+      }
+
+      ArrayList<SearchTask> subtasks = new ArrayList<>();
+      for (Direction dir : DIRECTIONS)
+      {
+        if (tryMove(game, path, moves, dir, bound))
+        {
+          subtasks.add(new SearchTask(Arrays.copyOf(path, moves + 1), bound, maxDepth));
+          undo(game);
+        }
+      }
+      invokeAll(subtasks);
+    }
+  }
+
+  /**
+   * Solves the sample levels from <code>ConsoleUI</code> and prints the results.
+   * @param args
+   *   optional maximum depth
+   */
+  public static void main(String[] args)
+  {
+    int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+    String[][] levels = {
+      ConsoleUI.test1, ConsoleUI.test2, ConsoleUI.test3, ConsoleUI.test4,
+      ConsoleUI.test5, ConsoleUI.test6, ConsoleUI.test6a, ConsoleUI.test7,
+      ConsoleUI.test7a, ConsoleUI.test8, ConsoleUI.test9
+    };
+    for (int i = 0; i < levels.length; ++i)
+    {
+      SolverResult result = new PearlsSolver(levels[i]).solve(maxDepth);
+      System.out.println("level " + i + ": " + result);
+    }
+  }
+}
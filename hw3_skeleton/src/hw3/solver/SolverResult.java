@@ -0,0 +1,170 @@
+package hw3.solver;
+
+import api.Direction;
+
+/**
+ * Outcome of a search by <code>PearlsSolver</code>, including the
+ * statistics needed to judge how fast the search ran.
+ */
+public class SolverResult
+{
+  /**
+   * Shortest winning move sequence, or null if none was found.
+   */
+  private final Direction[] moves;
+
+  /**
+   * Number of moves tried during the search.
+   */
+  private final long nodes;
+
+  /**
+   * Wall-clock time of the search in nanoseconds.
+   */
+  private final long elapsedNanos;
+
+  /**
+   * Largest number of positions held in the transposition table.
+   */
+  private final int peakTableSize;
+
+  /**
+   * Largest move count completely searched.
+   */
+  private final int depthSearched;
+
+  /**
+   * True if the search stopped because its time budget ran out.
+   */
+  private final boolean timedOut;
+
+  /**
+   * Constructs a result.
+   * @param moves
+   *   winning moves, or null if none were found
+   * @param nodes
+   *   number of moves tried
+   * @param elapsedNanos
+   *   duration of the search in nanoseconds
+   * @param peakTableSize
+   *   largest size of the transposition table
+   * @param depthSearched
+   *   largest move count completely searched
+   * @param timedOut
+   *   true if the search ran out of time
+   */
+  public SolverResult(Direction[] moves, long nodes, long elapsedNanos, int peakTableSize, int depthSearched,
+      boolean timedOut)
+  {
+    this.moves = moves;
+    this.nodes = nodes;
+    this.elapsedNanos = elapsedNanos;
+    this.peakTableSize = peakTableSize;
+    this.depthSearched = depthSearched;
+    this.timedOut = timedOut;
+  }
+
+  /**
+   * Determines whether a winning move sequence was found.
+   * @return
+   *   true if the level was solved
+   */
+  public boolean isSolved()
+  {
+    return moves != null;
+  }
+
+  /**
+   * Returns the shortest winning move sequence.
+   * @return
+   *   winning moves, or null if the level was not solved
+   */
+  public Direction[] getMoves()
+  {
+    return moves == null ? null : moves.clone();
+  }
+
+  /**
+   * Returns the number of moves tried during the search.
+   * @return
+   *   number of search nodes
+   */
+  public long getNodes()
+  {
+    return nodes;
+  }
+
+  /**
+   * Returns the duration of the search.
+   * @return
+   *   elapsed time in nanoseconds
+   */
+  public long getElapsedNanos()
+  {
+    return elapsedNanos;
+  }
+
+  /**
+   * Returns the search rate.
+   * @return
+   *   nodes per second
+   */
+  public double getNodesPerSecond()
+  {
+    return elapsedNanos == 0 ? 0 : nodes * 1e9 / elapsedNanos;
+  }
+
+  /**
+   * Returns the largest number of positions held in the transposition table.
+   * @return
+   *   peak table size
+   */
+  public int getPeakTableSize()
+  {
+    return peakTableSize;
+  }
+
+  /**
+   * Returns the largest move count that was completely searched.
+   * @return
+   *   depth searched
+   */
+  public int getDepthSearched()
+  {
+    return depthSearched;
+  }
+
+  /**
+   * Determines whether the search stopped because its time budget ran out
+   * before a solution was found.
+   * @return
+   *   true if the search timed out
+   */
+  public boolean isTimedOut()
+  {
+    return timedOut;
+  }
+
+  /**
+   * Returns a string representation of this result.
+   */
+  public String toString()
+  {
+    String solution = "no solution";
+    if (moves != null)
+    {
+      StringBuilder sb = new StringBuilder();
+      for (Direction d : moves)
+      {
+        sb.append(d.name().charAt(0));
+      }
+      solution = moves.length + " moves " + sb;
+    }
+    else if (timedOut)
+    {
+      solution = "timed out";
+    }
+    return String.format("%s, depth %d, %d nodes, %.0f nodes/s, peak table %d",
+        solution, depthSearched, nodes, getNodesPerSecond(), peakTableSize);
+  }
+}
@@ -187,6 +187,22 @@ public class AnimationStep
   {
     return animationCount >= end;
   }
+
+  /**
+   * Determines whether the position, visibility or size of this step
+   * may have changed when the animation count advanced from
+   * <code>previousCount</code> to <code>animationCount</code>.
+   * @param previousCount
+   *   animation count for the previous frame
+   * @param animationCount
+   *   animation count for the current frame
+   * @return
+   *   true if the cell needs to be redrawn
+   */
+  public boolean isActive(int previousCount, int animationCount)
+  {
+    return animationCount >= start && previousCount <= end;
+  }
   
   public void setDisapparating()
   {
@@ -17,10 +17,12 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 
 import javax.swing.JLabel;
@@ -92,6 +94,30 @@ public class GamePanel extends JPanel
     Color.ORANGE, //  PORTAL;
   };
   
+  // Fonts and strokes, created once
+  private static final Font CELL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, FONT_SIZE);
+  private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 20);
+  private static final BasicStroke THIN_STROKE = new BasicStroke(1);
+  private static final BasicStroke THICK_STROKE = new BasicStroke(4);
+  
+  /**
+   * Extra pixels around each sprite, since the portal outline 
+   * can extend slightly past the cell.
+   */
+  private static final int SPRITE_MARGIN = 2;
+  
+  /**
+   * Number of sprite variants per state: with or without the player, 
+   * each in the normal, animating, and game over modes.
+   */
+  private static final int SPRITE_VARIANTS = 6;
+  
+  /**
+   * Pre-rendered images of unshrunken cells, created as needed and indexed by 
+   * state ordinal * SPRITE_VARIANTS + variant.
+   */
+  private final BufferedImage[] sprites = new BufferedImage[State.values().length * SPRITE_VARIANTS];
+  
   /**
    * Indicates whether animation is currently in progress.
    */
@@ -162,12 +188,12 @@ public class GamePanel extends JPanel
     // components for score panel  
     pearlLabel = new JLabel(String.format(pearlFormat, 0));
     pearlLabel.setOpaque(true);
-    pearlLabel.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 20));
+    pearlLabel.setFont(LABEL_FONT);
     scorePanel.add(pearlLabel);
 
     moveLabel = new JLabel(String.format(moveFormat, 0));
     moveLabel.setOpaque(true);
-    moveLabel.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 20));
+    moveLabel.setFont(LABEL_FONT);
     scorePanel.add(moveLabel);
     
     // timer
@@ -179,15 +205,22 @@ public class GamePanel extends JPanel
   @Override
   public void paintComponent(Graphics g)
   {
+    // during animation only the regions around the moving cells are repainted
+    Rectangle clip = g.getClipBounds();
+    if (clip == null)
+    {
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    }
+    
     // clear background
     g.setColor(BACKGROUND);
-    g.fillRect(0, 0, getWidth(), getHeight());
+    g.fillRect(clip.x, clip.y, clip.width, clip.height);
     
     // change backgrounds when game ends
     if (!animating && game.isOver())
     {
       g.setColor(BACKGROUND_OVER);
-      g.fillRect(0, 0, getWidth(), getHeight());
+      g.fillRect(clip.x, clip.y, clip.width, clip.height);
 
       if (game.won())
       {
@@ -216,10 +249,14 @@ public class GamePanel extends JPanel
     // move label
     moveLabel.setText(String.format(moveFormat, game.getMoves()));
     
-    // draw cells
-    for (int row = 0; row < game.getRows(); ++row)
+    // draw the cells that intersect the clip
+    int firstRow = Math.max(0, clip.y / CELL_SIZE);
+    int lastRow = Math.min(game.getRows() - 1, (clip.y + clip.height - 1) / CELL_SIZE);
+    int firstCol = Math.max(0, clip.x / CELL_SIZE);
+    int lastCol = Math.min(game.getColumns() - 1, (clip.x + clip.width - 1) / CELL_SIZE);
+    for (int row = firstRow; row <= lastRow; ++row)
     {
-      for (int col = 0; col < game.getColumns(); ++col)
+      for (int col = firstCol; col <= lastCol; ++col)
       {
         Cell c = game.getCell(row, col);     
         drawCell(g, row, col, c);
@@ -309,7 +346,20 @@ public class GamePanel extends JPanel
    */
   private void drawCellPixelCoords(Graphics g, int row, int col, Cell c)
   {
-    drawCellPixelCoords(g, row, col, c, 0.0);
+    State s = c.getState();
+    int mode = animating ? 1 : (game.isOver() ? 2 : 0);
+    int index = s.ordinal() * SPRITE_VARIANTS + (c.isPlayerPresent() ? 3 : 0) + mode;
+    BufferedImage sprite = sprites[index];
+    if (sprite == null)
+    {
+      int size = CELL_SIZE + 2 * SPRITE_MARGIN;
+      sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+      Graphics sg = sprite.createGraphics();
+      drawCellPixelCoords(sg, SPRITE_MARGIN, SPRITE_MARGIN, c, 0.0);
+      sg.dispose();
+      sprites[index] = sprite;
+    }
+    g.drawImage(sprite, col - SPRITE_MARGIN, row - SPRITE_MARGIN, null);
   }
   
   /**
@@ -359,14 +409,14 @@ public class GamePanel extends JPanel
     {
       g.setColor(PLAYER_COLOR);
       g.fillOval(col + actualPadding, row + actualPadding, CELL_SIZE - 2 * actualPadding, CELL_SIZE - 2 * actualPadding);
-      ((Graphics2D) g).setStroke(new BasicStroke(1));
+      ((Graphics2D) g).setStroke(THIN_STROKE);
       g.setColor(Color.RED);
       g.drawOval(col + actualPadding, row + actualPadding, CELL_SIZE - 2 * actualPadding, CELL_SIZE - 2 * actualPadding);
     }
     else if (s == PORTAL)
     {
       // this is special because we might have to draw player in portal
-      ((Graphics2D) g).setStroke(new BasicStroke(4));
+      ((Graphics2D) g).setStroke(THICK_STROKE);
       g.drawRoundRect(col + padding - 2, row + padding - 2, CELL_SIZE - 2 * padding + 4, CELL_SIZE - 2 * padding + 4, 10, 10);    
       g.setColor(Color.BLACK);
       g.fillRoundRect(col + actualPadding, row + actualPadding, CELL_SIZE - 2 * actualPadding, CELL_SIZE - 2 * actualPadding, 10, 10);
@@ -374,7 +424,7 @@ public class GamePanel extends JPanel
       {
         g.setColor(PLAYER_COLOR);
         g.fillOval(col + actualPadding, row + actualPadding, CELL_SIZE - 2 * actualPadding, CELL_SIZE - 2 * actualPadding);
-        ((Graphics2D) g).setStroke(new BasicStroke(1));
+        ((Graphics2D) g).setStroke(THIN_STROKE);
         g.setColor(Color.RED);
         g.drawOval(col + actualPadding, row + actualPadding, CELL_SIZE - 2 * actualPadding, CELL_SIZE - 2 * actualPadding);
       }
@@ -383,7 +433,7 @@ public class GamePanel extends JPanel
     {
        g.fillOval(col + actualPadding, row + actualPadding, CELL_SIZE - 2 * actualPadding, CELL_SIZE - 2 * actualPadding);
        g.setColor(PEARL_OUTLINE);
-       ((Graphics2D) g).setStroke(new BasicStroke(1));
+       ((Graphics2D) g).setStroke(THIN_STROKE);
        g.drawOval(col + actualPadding, row + actualPadding, CELL_SIZE - 2 * actualPadding, CELL_SIZE - 2 * actualPadding);
     }
     else
@@ -397,7 +447,7 @@ public class GamePanel extends JPanel
     if (State.isSpikes(s) || State.isMovable(s))
     {
       g.setColor(Color.BLACK);
-      String text = StringUtil.toString(new Cell[]{c}).trim();
+      String text = StringUtil.toString(new State[]{s}, c.isPlayerPresent() ? 0 : -1).trim();
       drawTextPixelCoords(g, row, col, text);
     }
   }
@@ -412,9 +462,8 @@ public class GamePanel extends JPanel
    */
   private void drawText(Graphics g, int row, int col, String text)
   {
-    Font f = new Font(Font.SANS_SERIF, Font.PLAIN, FONT_SIZE);
-    g.setFont(f);
-    FontMetrics fm = g.getFontMetrics(f);
+    g.setFont(CELL_FONT);
+    FontMetrics fm = g.getFontMetrics(CELL_FONT);
     // String text = "" + c.getCount();
     int h = fm.getHeight();
     int w = fm.stringWidth(text);
@@ -433,9 +482,8 @@ public class GamePanel extends JPanel
    */
   private void drawTextPixelCoords(Graphics g, int row, int col, String text)
   {
-    Font f = new Font(Font.SANS_SERIF, Font.PLAIN, FONT_SIZE);
-    g.setFont(f);
-    FontMetrics fm = g.getFontMetrics(f);
+    g.setFont(CELL_FONT);
+    FontMetrics fm = g.getFontMetrics(CELL_FONT);
     // String text = "" + c.getCount();
     int h = fm.getHeight();
     int w = fm.stringWidth(text);
@@ -1105,7 +1153,11 @@ public class GamePanel extends JPanel
       setUpAnimation(predescriptors, startingRow, startingCol, dir);
       animationCount = 0;
       animating = true;
-      timer.start();      
+      timer.start();
+      
+      // cells along the path are erased once, after that only
+      // the moving cells are repainted
+      repaint();
     }
 
     @Override
@@ -1128,20 +1180,32 @@ public class GamePanel extends JPanel
   
   /**
    * Listener for timer events.  The actionPerformed method
-   * is invoked each time the timer fires and the call to
-   * repaint() at the bottom of the method causes the panel
-   * to be redrawn.
+   * is invoked each time the timer fires and requests a repaint
+   * of the regions covered by the animation steps that changed, 
+   * or of the whole panel when the animation ends.
    */
   private class TimerCallback implements ActionListener
   {
     @Override
     public void actionPerformed(ActionEvent arg0)
     {
+      int previousCount = animationCount;
       animationCount += countPerFrame;
       int doneCount = 0;
       for (AnimationStep a : animations)
       {
+        int oldRow = a.getCurrentRow();
+        int oldCol = a.getCurrentCol();
         a.step(animationCount);
+        if (a.isActive(previousCount, animationCount))
+        {
+          // cover both the old and new positions
+          int row = Math.min(oldRow, a.getCurrentRow());
+          int col = Math.min(oldCol, a.getCurrentCol());
+          int height = Math.abs(oldRow - a.getCurrentRow()) + CELL_SIZE;
+          int width = Math.abs(oldCol - a.getCurrentCol()) + CELL_SIZE;
+          repaint(col - SPRITE_MARGIN, row - SPRITE_MARGIN, width + 2 * SPRITE_MARGIN, height + 2 * SPRITE_MARGIN);
+        }
         if (a.done(animationCount))
         {
           doneCount += 1;
@@ -1158,9 +1222,8 @@ public class GamePanel extends JPanel
         timer.stop();
         animations = null;
         animating = false;
+        repaint();
       }
-      
-      repaint();
     }
   }
 
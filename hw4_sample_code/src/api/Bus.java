@@ -0,0 +1,148 @@
+package api;
+
+/**
+ * A Bus is a view of a contiguous range of at most 64 Pins in an array,
+ * such as the inputs or outputs of a component, that can be read and
+ * written as a single binary number.  Bit i of the number corresponds
+ * to the Pin at index <code>start + i</code> of the array.  Reading and
+ * writing do not allocate any objects.
+ */
+public class Bus
+{
+  /**
+   * The array of Pins containing the range.
+   */
+  private final Pin[] pins;
+
+  /**
+   * Index in the array of the least significant bit.
+   */
+  private final int start;
+
+  /**
+   * Number of Pins in the range.
+   */
+  private final int width;
+
+  /**
+   * Constructs a Bus for all Pins of the given array.
+   * @param pins
+   *   array of at most 64 Pins
+   */
+  public Bus(Pin[] pins)
+  {
+    this(pins, 0, pins.length);
+  }
+
+  /**
+   * Constructs a Bus for the given range of Pins.
+   * @param pins
+   *   array of Pins
+   * @param start
+   *   index in the array of the least significant bit
+   * @param width
+   *   number of Pins, at most 64
+   * @throws IllegalArgumentException
+   *   if the range does not fit in the array or is wider than 64 Pins
+   */
+  public Bus(Pin[] pins, int start, int width)
+  {
+    if (start < 0 || width < 0 || width > 64 || start + width > pins.length)
+    {
+      throw new IllegalArgumentException("Invalid bus range " + start + ", width " + width + " for " + pins.length + " pins");
+    }
+    this.pins = pins;
+    this.start = start;
+    this.width = width;
+  }
+
+  /**
+   * Returns the number of Pins in this Bus.
+   * @return
+   *   width of this Bus
+   */
+  public int getWidth()
+  {
+    return width;
+  }
+
+  /**
+   * Returns the Pin for the given bit.
+   * @param bit
+   *   index of the bit, 0 for the least significant
+   * @return
+   *   the Pin for the bit
+   */
+  public Pin getPin(int bit)
+  {
+    return pins[start + bit];
+  }
+
+  /**
+   * Sets every Pin of this Bus from the corresponding bit of the given
+   * value.  Bits beyond the width are ignored.
+   * @param value
+   *   value to be written
+   */
+  public void write(long value)
+  {
+    for (int i = 0; i < width; ++i)
+    {
+      pins[start + i].set((int) (value >>> i) & 1);
+    }
+  }
+
+  /**
+   * Returns whether all Pins of this Bus are valid.
+   * @return
+   *   true if all Pins are valid, false otherwise
+   */
+  public boolean isValid()
+  {
+    for (int i = 0; i < width; ++i)
+    {
+      if (!pins[start + i].isValid())
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the value of this Bus, or -1 if any Pin is invalid.  For a Bus
+   * of width 64, use isValid() to tell an invalid Bus from all ones.
+   * @return
+   *   value of this Bus, or -1
+   */
+  public long read()
+  {
+    long result = 0;
+    for (int i = 0; i < width; ++i)
+    {
+      Pin p = pins[start + i];
+      if (!p.isValid())
+      {
+        return -1;
+      }
+      result |= (long) (p.getValue() & 1) << i;
+    }
+    return result;
+  }
+
+  /**
+   * Returns a string of 0's and 1's representing this Bus, in the
+   * format of Util.toString.
+   * @return
+   *   string representation of this Bus
+   */
+  public String toString()
+  {
+    char[] chars = new char[width];
+    for (int i = 0; i < width; ++i)
+    {
+      chars[width - 1 - i] = Util.toChar(pins[start + i]);
+    }
+    return new String(chars);
+  }
+}
@@ -56,8 +56,49 @@ public class ExternalValue implements IStatefulComponent
    */
   public void setValues(int value)
   {
-    String temp = Integer.toBinaryString(value);
-    setValues(temp);
+    // as many bits as Integer.toBinaryString would give
+    Util.setBits(outputs, value, 0);
+  }
+  
+  /**
+   * Sets every bit of the state of this component from the given value,
+   * where index 0 corresponds to the least significant bit.  Unlike
+   * setValues(int), leading zeros are also set.  Bits beyond the size
+   * of this component are ignored.
+   * @param value
+   *   value whose bits are used
+   */
+  public void setBits(long value)
+  {
+    setBits(value, 0, Math.min(outputs.length, 64));
+  }
+  
+  /**
+   * Sets the given range of bits of the state of this component from
+   * the low bits of the given value.
+   * @param value
+   *   value whose bits are used
+   * @param start
+   *   index of the bit set from the least significant bit of the value
+   * @param width
+   *   number of bits to set, at most 64
+   */
+  public void setBits(long value, int start, int width)
+  {
+    for (int i = 0; i < width && start + i < outputs.length; i += 1)
+    {
+      outputs[start + i].set((int) (value >>> i) & 1);
+    }
+  }
+  
+  /**
+   * Returns a Bus for the outputs of this component.
+   * @return
+   *   Bus for the outputs, which must number at most 64
+   */
+  public Bus getBus()
+  {
+    return new Bus(outputs);
   }
   
   /**
@@ -70,7 +111,7 @@ public class ExternalValue implements IStatefulComponent
    */
   public void setValues(int[] values)
   {
-    int max = Math.max(values.length, outputs.length);
+    int max = Math.min(values.length, outputs.length);
     for (int i = 0; i < max; i += 1)
     {
       if (values[i] == 0 || values[i] == 1)
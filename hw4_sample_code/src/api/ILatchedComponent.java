@@ -0,0 +1,23 @@
+package api;
+
+/**
+ * Subinterface of IStatefulComponent for components whose tick() can be
+ * split into two phases, so that a clock can update many components at
+ * once: first every component samples its inputs, then every component
+ * updates its outputs.  No component then sees an output that another
+ * component changed during the same clock cycle.
+ */
+public interface ILatchedComponent extends IStatefulComponent
+{
+  /**
+   * Computes the next internal state from the current inputs and state,
+   * provided that the component is enabled, without changing the outputs.
+   */
+  void sample();
+
+  /**
+   * Makes the state computed by the last call to sample() current
+   * and updates the outputs.
+   */
+  void commit();
+}
@@ -1,6 +1,7 @@
 package api;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * A Pin represents a connection point in a digital 
@@ -12,24 +13,41 @@ import java.util.ArrayList;
 public class Pin
 {
   /**
-   * The value stored in this Pin.
+   * Bit of the state holding the value.
    */
-  private int value;
+  private static final byte VALUE = 1;
   
   /**
-   * Represents whether or not this Pin is valid.
+   * Bit of the state that is set when this Pin is valid.
    */
-  private boolean valid;
+  private static final byte VALID = 2;
   
   /**
-   * List of destination Pins to which this one is connected.
+   * Value and validity of this Pin, packed into one byte.
    */
-  private ArrayList<Pin> connections;
+  private byte state;
   
   /**
-   * List of listeners to be notified when this Pin changes.
+   * First destination Pin to which this one is connected, or null.
    */
-  private ArrayList<IPinListener> listeners; 
+  private Pin connection;
+  
+  /**
+   * Further destination Pins, in order of connection, followed by nulls;
+   * null until there is a second connection.
+   */
+  private Pin[] moreConnections;
+  
+  /**
+   * First listener to be notified when this Pin changes, or null.
+   */
+  private IPinListener listener;
+  
+  /**
+   * Further listeners, followed by nulls; null until there is a second
+   * listener.
+   */
+  private IPinListener[] moreListeners;
   
   /**
    * Component object to which this Pin belongs.
@@ -44,8 +62,6 @@ public class Pin
    */
   public Pin(IComponent parent)
   {
-    connections = new ArrayList<Pin>();
-    listeners = new ArrayList<IPinListener>();
     this.parent = parent;
   }
   
@@ -68,17 +84,55 @@ public class Pin
    */
   public void connectTo(Pin destination)
   {
-    connections.add(destination);
+    if (connection == null)
+    {
+      connection = destination;
+    }
+    else
+    {
+      if (moreConnections == null)
+      {
+        moreConnections = new Pin[2];
+      }
+      moreConnections = append(moreConnections, destination);
+    }
   }
   
   /**
-   * Returns the list of Pins connected to this one.
+   * Returns the list of Pins connected to this one.  The list is
+   * a new copy, so changing it does not change the connections.
    * @return
    *   list of Pins connected to this one
    */
   public ArrayList<Pin> getConnections()
   {
-    return connections;
+    ArrayList<Pin> result = new ArrayList<Pin>(getConnectionCount());
+    if (connection != null)
+    {
+      result.add(connection);
+      if (moreConnections != null)
+      {
+        for (int i = 0; i < moreConnections.length && moreConnections[i] != null; ++i)
+        {
+          result.add(moreConnections[i]);
+        }
+      }
+    }
+    return result;
+  }
+  
+  /**
+   * Returns the number of Pins connected to this one.
+   * @return
+   *   number of connections
+   */
+  public int getConnectionCount()
+  {
+    if (connection == null)
+    {
+      return 0;
+    }
+    return moreConnections == null ? 1 : 1 + firstNull(moreConnections);
   }
   
   /**
@@ -88,7 +142,7 @@ public class Pin
    */
   public int getValue()
   {
-    return value;
+    return state & VALUE;
   }
   
   /**
@@ -97,7 +151,7 @@ public class Pin
    */
   public void invalidate()
   {
-    valid = false;
+    state &= ~VALID;
     notifyListeners();
   }
   
@@ -108,7 +162,7 @@ public class Pin
    */
   public boolean isValid()
   {
-    return valid;
+    return (state & VALID) != 0;
   }
   
   /**
@@ -120,16 +174,36 @@ public class Pin
    */
   public void set(int givenValue)
   {
-    value = givenValue;
-    valid = true;
+    state = (byte) (VALID | (givenValue & VALUE));
     
-    for (Pin e : connections)
+    if (connection != null)
     {
-      e.set(givenValue);
+      connection.set(givenValue);
+      if (moreConnections != null)
+      {
+        for (int i = 0; i < moreConnections.length && moreConnections[i] != null; ++i)
+        {
+          moreConnections[i].set(givenValue);
+        }
+      }
     }
     notifyListeners();
   }
   
+  /**
+   * Puts this Pin back in a state saved earlier with getValue and
+   * isValid.  Unlike set and invalidate, this method neither modifies
+   * connected Pins nor notifies listeners.
+   * @param givenValue
+   *   value to be restored
+   * @param valid
+   *   whether this Pin is to be valid
+   */
+  public void restore(int givenValue, boolean valid)
+  {
+    state = (byte) ((valid ? VALID : 0) | (givenValue & VALUE));
+  }
+  
   /**
    * Returns a String representation of this Pin's 
    * value as either "0" or "1", or "-" if the state is invalid.
@@ -138,9 +212,9 @@ public class Pin
    */
   public String toString()
   {
-    if (valid)
+    if (isValid())
     {
-      return "" + value;
+      return "" + getValue();
     }
     else
     {
@@ -156,7 +230,57 @@ public class Pin
    */
   public void addListener(IPinListener listener)
   {
-    listeners.add(listener);
+    if (this.listener == null)
+    {
+      this.listener = listener;
+    }
+    else
+    {
+      if (moreListeners == null)
+      {
+        moreListeners = new IPinListener[2];
+      }
+      moreListeners = append(moreListeners, listener);
+    }
+  }
+  
+  /**
+   * Returns whether any listener has been added to this Pin.
+   * @return
+   *   true if there is at least one listener
+   */
+  public boolean hasListeners()
+  {
+    return listener != null;
+  }
+  
+  /**
+   * Removes all listeners from this Pin and returns them, in the
+   * order they were added, so that they can be added back later.
+   * @return
+   *   array of the removed listeners, possibly empty
+   */
+  public IPinListener[] removeListeners()
+  {
+    IPinListener[] result;
+    if (listener == null)
+    {
+      result = new IPinListener[0];
+    }
+    else if (moreListeners == null)
+    {
+      result = new IPinListener[] { listener };
+    }
+    else
+    {
+      int count = firstNull(moreListeners);
+      result = new IPinListener[count + 1];
+      result[0] = listener;
+      System.arraycopy(moreListeners, 0, result, 1, count);
+    }
+    listener = null;
+    moreListeners = null;
+    return result;
   }
   
   /**
@@ -164,9 +288,55 @@ public class Pin
    */
   private void notifyListeners()
   {
-    for (IPinListener listener : listeners)
+    if (listener != null)
     {
       listener.update(parent);
+      if (moreListeners != null)
+      {
+        for (int i = 0; i < moreListeners.length && moreListeners[i] != null; ++i)
+        {
+          moreListeners[i].update(parent);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Helper method stores the given element in the first null entry of
+   * the array, doubling the array if it is full, and returns the array.
+   */
+  private static <T> T[] append(T[] array, T element)
+  {
+    int index = firstNull(array);
+    if (index == array.length)
+    {
+      array = Arrays.copyOf(array, array.length * 2);
+    }
+    array[index] = element;
+    return array;
+  }
+  
+  /**
+   * Helper method returns the index of the first null entry of the
+   * array, or its length if there is none.  The entries are non-null
+   * up to some index and null after it, so a binary search is used.
+   */
+  private static int firstNull(Object[] array)
+  {
+    int low = 0;
+    int high = array.length;
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      if (array[mid] == null)
+      {
+        high = mid;
+      }
+      else
+      {
+        low = mid + 1;
+      }
     }
+    return low;
   }
 }
@@ -37,8 +37,85 @@ public class Util
    */
   public static void setInputs(IComponent c, int value)
   {
-    String temp = Integer.toBinaryString(value);
-    setInputs(c, temp);
+    // as many bits as Integer.toBinaryString would give
+    setBits(c.inputs(), value, 0);
+  }
+
+  /**
+   * Sets the given pins, starting at index 'start', from the binary 
+   * representation of the given value without leading zeros, the
+   * same bits that Integer.toBinaryString(value) would give.
+   * Excess bits are ignored.
+   * @param pins
+   *   array of Pins to be set
+   * @param value
+   *   integer value whose binary representation will be used
+   * @param start
+   *   index in the array for the least significant bit
+   */
+  static void setBits(Pin[] pins, int value, int start)
+  {
+    int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(value));
+    for (int i = 0; i < bits && start + i < pins.length; ++i)
+    {
+      pins[start + i].set((value >>> i) & 1);
+    }
+  }
+
+  /**
+   * Returns a Bus for all inputs of the given component.
+   * @param c
+   *   component with at most 64 inputs
+   * @return
+   *   Bus for the inputs
+   */
+  public static Bus inputBus(IComponent c)
+  {
+    return new Bus(c.inputs());
+  }
+
+  /**
+   * Returns a Bus for the given range of inputs of the given component.
+   * @param c
+   *   component
+   * @param start
+   *   index of the input for the least significant bit
+   * @param width
+   *   number of inputs, at most 64
+   * @return
+   *   Bus for the inputs
+   */
+  public static Bus inputBus(IComponent c, int start, int width)
+  {
+    return new Bus(c.inputs(), start, width);
+  }
+
+  /**
+   * Returns a Bus for all outputs of the given component.
+   * @param c
+   *   component with at most 64 outputs
+   * @return
+   *   Bus for the outputs
+   */
+  public static Bus outputBus(IComponent c)
+  {
+    return new Bus(c.outputs());
+  }
+
+  /**
+   * Returns a Bus for the given range of outputs of the given component.
+   * @param c
+   *   component
+   * @param start
+   *   index of the output for the least significant bit
+   * @param width
+   *   number of outputs, at most 64
+   * @return
+   *   Bus for the outputs
+   */
+  public static Bus outputBus(IComponent c, int start, int width)
+  {
+    return new Bus(c.outputs(), start, width);
   }
 
   /**
@@ -138,24 +215,37 @@ public class Util
    */
   public static String toString(Pin[] pins)
   {
-    String result = "";
+    char[] result = new char[pins.length];
     for (int i = pins.length - 1; i >= 0; i -= 1)
     {
-      char ch = '-';
-      if (pins[i].isValid())
+      result[pins.length - 1 - i] = toChar(pins[i]);
+    }
+    return new String(result);
+  }
+
+  /**
+   * Returns the character representing a Pin in Util.toString: '0' or '1',
+   * or '-' if the Pin is invalid or has another value.
+   * @param p
+   *   the Pin
+   * @return
+   *   character representing the Pin
+   */
+  static char toChar(Pin p)
+  {
+    char ch = '-';
+    if (p.isValid())
+    {
+      if (p.getValue() == 0)
       {
-        if (pins[i].getValue() == 0)
-        {
-          ch = '0';
-        }
-        else if (pins[i].getValue() == 1)
-        {
-          ch = '1';
-        }
+        ch = '0';
+      }
+      else if (p.getValue() == 1)
+      {
+        ch = '1';
       }
-      result = result + ch;
     }
-    return result;
+    return ch;
   }
   
   /**
@@ -225,26 +315,26 @@ public class Util
    * Returns the integer value of the array of pins, interpreted
    * as a binary number whose least significant bit is at index 'start'
    * and whose most significant bit is at index 'end'.
-   * Returns -1 if any pin is not valid.
+   * Returns -1 if any pin is not valid.  Only the 32 pins from 'start'
+   * contribute to the value; use Bus.read for wider ranges.
    * @param pins
    * @param start
    * @return
    */
   public static int toIntValue(Pin[] pins, int start, int end)
   {
-    int pow = 1;
     int result = 0;
-    for (int i = start; i <= Math.min(end, pins.length - 1); ++i)
+    int last = Math.min(end, pins.length - 1);
+    for (int i = start; i <= last; ++i)
     {
-      if (pins[i].isValid())
+      Pin p = pins[i];
+      if (!p.isValid())
       {
-        int bit = pins[i].getValue();
-        result += bit * pow;
-        pow *= 2;
+        return -1;
       }
-      else
+      if (i - start < 32)
       {
-        return -1;
+        result += p.getValue() << (i - start);
       }
     }
     return result;
@@ -0,0 +1,361 @@
+package api;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records changes on the outputs of components and writes them as a
+ * waveform in Value Change Dump (VCD) format.  Each watched pin gets its own
+ * IPinListener, so a change costs the same however many outputs the
+ * component has.  Each change is stored as a (time, pin id, value)
+ * entry in a preallocated ring buffer, and a background thread takes entries
+ * from the buffer and writes them out, so recording a change costs only a few
+ * array stores.  If the writer falls behind and the buffer fills up, the
+ * simulation waits for it.
+ * <p>
+ * The ring buffer has a single producer: all changes must be made from one
+ * thread, the first one to change a watched pin after start().  A change
+ * from any other thread, such as a ForkJoinPool worker of a compound
+ * propagating in parallel, throws IllegalStateException.
+ * <p>
+ * Typical use: construct the recorder, call watch() for each component,
+ * call start(), run the simulation calling setTime() as time advances,
+ * and finally call close().
+ */
+public class WaveformRecorder
+{
+  /**
+   * Values stored for a pin in the invalid state.
+   */
+  private static final byte INVALID = 2;
+
+  /**
+   * How long the writer thread sleeps when the buffer is empty.
+   */
+  private static final long IDLE_NANOS = 100000;
+
+  /**
+   * Destination for the VCD text.
+   */
+  private final Writer out;
+
+  // ring buffer of entries, written by the simulation thread and
+  // read by the writer thread
+  private final long[] times;
+  private final int[] ids;
+  private final byte[] values;
+  private final int mask;
+
+  /**
+   * Number of entries added, only written by the simulation thread.
+   */
+  private volatile long head;
+
+  /**
+   * Number of entries written out, only written by the writer thread.
+   */
+  private volatile long tail;
+
+  /**
+   * Current simulation time.
+   */
+  private long time;
+
+  /**
+   * Names of the watched pins, indexed by pin id.
+   */
+  private final ArrayList<String> names = new ArrayList<String>();
+
+  /**
+   * Watched pins, indexed by pin id.
+   */
+  private final ArrayList<Pin> pins = new ArrayList<Pin>();
+
+  /**
+   * VCD identifiers, indexed by pin id, created by start().
+   */
+  private String[] identifiers;
+
+  private Thread writerThread;
+
+  /**
+   * The only thread allowed to record changes, set by the first change.
+   */
+  private Thread producer;
+
+  /**
+   * Whether changes are being recorded, from start() until close().
+   */
+  private boolean recording;
+  private volatile boolean closing;
+  private volatile IOException failure;
+
+  /**
+   * Constructs a recorder writing to the given destination.
+   * @param out
+   *   destination for the VCD text
+   * @param capacity
+   *   number of entries in the ring buffer, rounded up to a power of two
+   */
+  public WaveformRecorder(Writer out, int capacity)
+  {
+    this.out = out;
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    times = new long[size];
+    ids = new int[size];
+    values = new byte[size];
+    mask = size - 1;
+  }
+
+  /**
+   * Watches all outputs of the given component.  Output i is named
+   * <code>name[i]</code> in the waveform.  Must be called before start().
+   * @param c
+   *   component to watch
+   * @param name
+   *   name for the component in the waveform
+   */
+  public void watch(IComponent c, String name)
+  {
+    if (writerThread != null)
+    {
+      throw new IllegalStateException("Recording has already started");
+    }
+    Pin[] outputs = c.outputs();
+    for (int i = 0; i < outputs.length; ++i)
+    {
+      outputs[i].addListener(new Channel(outputs[i], pins.size()));
+      pins.add(outputs[i]);
+      names.add(name + "[" + i + "]");
+    }
+  }
+
+  /**
+   * Sets the current simulation time, which is recorded with each change.
+   * Time should not decrease.
+   * @param givenTime
+   *   the current time
+   */
+  public void setTime(long givenTime)
+  {
+    time = givenTime;
+  }
+
+  /**
+   * Returns the current simulation time.
+   * @return
+   *   the current time
+   */
+  public long getTime()
+  {
+    return time;
+  }
+
+  /**
+   * Writes the VCD header and the current value of every watched pin,
+   * and starts writing changes in the background.
+   * @throws IOException
+   *   if the header cannot be written
+   */
+  public void start() throws IOException
+  {
+    if (writerThread != null)
+    {
+      throw new IllegalStateException("Recording has already started");
+    }
+    identifiers = new String[pins.size()];
+    out.write("$timescale 1ns $end\n$scope module top $end\n");
+    for (int id = 0; id < pins.size(); ++id)
+    {
+      identifiers[id] = identifier(id);
+      out.write("$var wire 1 " + identifiers[id] + " " + names.get(id) + " $end\n");
+    }
+    out.write("$upscope $end\n$enddefinitions $end\n#" + time + "\n$dumpvars\n");
+    for (int id = 0; id < pins.size(); ++id)
+    {
+      out.write(valueChar(valueOf(pins.get(id))));
+      out.write(identifiers[id]);
+      out.write('\n');
+    }
+    out.write("$end\n");
+
+    final long startTime = time;
+    writerThread = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        drain(startTime);
+      }
+    }, "WaveformRecorder");
+    writerThread.setDaemon(true);
+    recording = true;
+    writerThread.start();
+  }
+
+  /**
+   * Stops recording, waits until all recorded changes are written, then
+   * flushes the destination.  The destination is not closed.
+   * @throws IOException
+   *   if the waveform could not be written
+   * @throws InterruptedException
+   *   if interrupted while waiting for the writer
+   */
+  public void close() throws IOException, InterruptedException
+  {
+    recording = false;
+    if (writerThread != null)
+    {
+      closing = true;
+      LockSupport.unpark(writerThread);
+      writerThread.join();
+    }
+    if (failure != null)
+    {
+      throw failure;
+    }
+    out.flush();
+  }
+
+  /**
+   * Returns the number of changes recorded so far.
+   * @return
+   *   number of changes
+   */
+  public long getChangeCount()
+  {
+    return head;
+  }
+
+  /**
+   * Adds an entry to the ring buffer, waiting if it is full.
+   * @throws IllegalStateException
+   *   if called from a second thread
+   */
+  private void record(int id, byte value)
+  {
+    if (!recording)
+    {
+      return;
+    }
+    Thread current = Thread.currentThread();
+    if (producer != current)
+    {
+      if (producer != null)
+      {
+        throw new IllegalStateException("Changes recorded from " + current.getName() + 
+            " as well as " + producer.getName() + "; the recorder allows only one thread");
+      }
+      producer = current;
+    }
+    long h = head;
+    while (h - tail > mask && failure == null)
+    {
+      Thread.yield();
+    }
+    int i = (int) h & mask;
+    times[i] = time;
+    ids[i] = id;
+    values[i] = value;
+    head = h + 1;
+  }
+
+  /**
+   * Body of the writer thread: writes entries until closed and empty.
+   */
+  private void drain(long lastTime)
+  {
+    StringBuilder sb = new StringBuilder();
+    try
+    {
+      while (true)
+      {
+        long h = head;
+        long t = tail;
+        if (t == h)
+        {
+          if (closing && head == t)
+          {
+            break;
+          }
+          LockSupport.parkNanos(IDLE_NANOS);
+          continue;
+        }
+        sb.setLength(0);
+        for (; t < h; ++t)
+        {
+          int i = (int) t & mask;
+          if (times[i] != lastTime)
+          {
+            lastTime = times[i];
+            sb.append('#').append(lastTime).append('\n');
+          }
+          sb.append(valueChar(values[i])).append(identifiers[ids[i]]).append('\n');
+        }
+        tail = t;
+        out.append(sb);
+      }
+    }
+    catch (IOException e)
+    {
+      failure = e;
+    }
+  }
+
+  private static byte valueOf(Pin p)
+  {
+    return p.isValid() ? (byte) (p.getValue() & 1) : INVALID;
+  }
+
+  private static char valueChar(byte value)
+  {
+    return value == INVALID ? 'x' : (char) ('0' + value);
+  }
+
+  /**
+   * Returns the VCD identifier for a pin id, a string of the printable
+   * characters from '!' to '~'.
+   */
+  private static String identifier(int id)
+  {
+    StringBuilder sb = new StringBuilder();
+    do
+    {
+      sb.append((char) ('!' + id % 94));
+      id /= 94;
+    } while (id > 0);
+    return sb.toString();
+  }
+
+  /**
+   * Listener for one watched pin.  A Pin reports only its component when
+   * it changes, so each pin has its own listener that knows which pin it
+   * is, and compares the value with the one last seen because setting a
+   * pin to its current value also notifies.
+   */
+  private class Channel implements IPinListener
+  {
+    private final Pin pin;
+    private final int id;
+    private byte last;
+
+    public Channel(Pin pin, int id)
+    {
+      this.pin = pin;
+      this.id = id;
+      last = valueOf(pin);
+    }
+
+    @Override
+    public void update(IComponent c)
+    {
+      byte value = valueOf(pin);
+      if (value != last)
+      {
+        last = value;
+        record(id, value);
+      }
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package hw4;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import api.Bus;
+import api.IComponent;
+import api.IPinListener;
+import api.IStatefulComponent;
+import api.Pin;
+
+/**
+ * Stands in for a stateless compound component during scheduling, computing
+ * its outputs with a single lookup in a truth table.  The table is built the
+ * first time the outputs are needed, from a Netlist if the subtree consists
+ * of primitive gates and otherwise by simulating every input assignment.
+ * The pins inside the subtree are not updated by the lookup.
+ *
+ * Tables are shared between subtrees with the same structure: the same
+ * classes of leaf components, connected in the same way.  Leaves of the same
+ * class are assumed to compute the same function of their inputs.
+ *
+ * @author Anji Xu
+ *
+ */
+class CachedSubtree implements IComponent {
+
+	/**
+	 * Largest number of inputs for which a table is built.
+	 */
+	static final int MAX_INPUTS = 16;
+
+	/**
+	 * Largest number of outputs, so an entry fits in an int with -1 left
+	 * to mark assignments for which the outputs are invalid.
+	 */
+	static final int MAX_OUTPUTS = 31;
+
+	/**
+	 * Largest number of distinct structures whose tables are kept for
+	 * sharing; subtrees with further structures get tables of their own.
+	 */
+	static final int MAX_SHARED_TABLES = 256;
+
+	/**
+	 * Tables built so far, by structure signature.
+	 */
+	private static final ConcurrentHashMap<String, int[]> SHARED = new ConcurrentHashMap<>();
+
+	private final CompoundComponent subtree;
+	private final Pin[] inputs;
+	private final Pin[] outputs;
+	private int[] table;
+
+	CachedSubtree(CompoundComponent subtree) {
+		this.subtree = subtree;
+		inputs = subtree.inputs();
+		outputs = subtree.outputs();
+	}
+
+	/**
+	 * Returns whether a table can be used for the given component: it is
+	 * a compound with no stateful component inside and few enough pins.
+	 */
+	static boolean isCacheable(IComponent c) {
+		if (!(c instanceof CompoundComponent) || c.inputs().length > MAX_INPUTS || c.outputs().length > MAX_OUTPUTS) {
+			return false;
+		}
+		for (IComponent leaf : Scheduler.collectLeaves(c)) {
+			if (leaf instanceof IStatefulComponent) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void propagate() {
+		int index = 0;
+		for (int i = 0; i < inputs.length; i++) {
+			Pin p = inputs[i];
+			if (!p.isValid()) {
+				return;
+			}
+			index |= (p.getValue() & 1) << i;
+		}
+		if (table == null) {
+			table = sharedTable();
+		}
+		int value = table[index];
+		if (value < 0) {
+			invalidateOutputs();
+			return;
+		}
+		for (int k = 0; k < outputs.length; k++) {
+			outputs[k].set((value >>> k) & 1);
+		}
+	}
+
+	/**
+	 * Returns the table for a subtree with this structure, building it if
+	 * no such subtree has been seen.
+	 */
+	private int[] sharedTable() {
+		String key = signature(subtree);
+		int[] result = SHARED.get(key);
+		if (result == null) {
+			result = buildTable();
+			if (SHARED.size() < MAX_SHARED_TABLES) {
+				int[] other = SHARED.putIfAbsent(key, result);
+				if (other != null) {
+					result = other;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the outputs for every input assignment.
+	 */
+	private int[] buildTable() {
+		try {
+			return Netlist.compile(subtree).truthTable();
+		} catch (IllegalArgumentException e) {
+			// not all primitive gates, so simulate
+			return simulateTable();
+		}
+	}
+
+	/**
+	 * Computes the outputs for every input assignment by driving the inputs
+	 * of the subtree.  Every pin the simulation can reach is saved first,
+	 * value and validity, and restored exactly afterwards, without passing
+	 * values on through connections, and its listeners are removed in
+	 * between so they see none of the simulated values.
+	 */
+	private int[] simulateTable() {
+		ArrayList<Pin> pins = reachedPins();
+		int n = pins.size();
+		boolean[] valid = new boolean[n];
+		int[] values = new int[n];
+		IPinListener[][] listeners = new IPinListener[n][];
+		for (int i = 0; i < n; i++) {
+			Pin p = pins.get(i);
+			valid[i] = p.isValid();
+			values[i] = p.getValue();
+			listeners[i] = p.removeListeners();
+		}
+		try {
+			Bus in = new Bus(inputs);
+			Bus out = new Bus(outputs);
+			Scheduler scheduler = new Scheduler(subtree);
+			int[] result = new int[1 << inputs.length];
+			for (int v = 0; v < result.length; v++) {
+				in.write(v);
+				scheduler.settle();
+				result[v] = (int) out.read();
+			}
+			return result;
+		} finally {
+			for (int i = 0; i < n; i++) {
+				pins.get(i).restore(values[i], valid[i]);
+			}
+			for (int i = 0; i < n; i++) {
+				for (IPinListener l : listeners[i]) {
+					pins.get(i).addListener(l);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the pins of the subtree and of every component inside it,
+	 * together with the pins reached from them through connections, such
+	 * as those fed by the subtree's outputs.
+	 */
+	private ArrayList<Pin> reachedPins() {
+		ArrayList<Pin> result = new ArrayList<>();
+		IdentityHashMap<Pin, Boolean> seen = new IdentityHashMap<>();
+		ArrayList<Pin> stack = new ArrayList<>();
+		ArrayList<IComponent> components = new ArrayList<>();
+		components.add(subtree);
+		for (int i = 0; i < components.size(); i++) {
+			IComponent c = components.get(i);
+			if (c instanceof CompoundComponent) {
+				components.addAll(((CompoundComponent) c).getComponents());
+			}
+			for (Pin p : c.inputs()) {
+				stack.add(p);
+			}
+			for (Pin p : c.outputs()) {
+				stack.add(p);
+			}
+		}
+		while (!stack.isEmpty()) {
+			Pin p = stack.remove(stack.size() - 1);
+			if (seen.put(p, Boolean.TRUE) == null) {
+				result.add(p);
+				stack.addAll(p.getConnections());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a string describing the structure of the given subtree: the
+	 * class of each leaf, and which of the subtree's pins and leaf pins each
+	 * of them drives, following connections through the pins of compounds
+	 * inside the subtree.  Two subtrees built the same way have the same
+	 * signature.
+	 */
+	static String signature(CompoundComponent subtree) {
+		IdentityHashMap<IComponent, Boolean> inside = new IdentityHashMap<>();
+		ArrayList<IComponent> stack = new ArrayList<>();
+		stack.add(subtree);
+		while (!stack.isEmpty()) {
+			IComponent c = stack.remove(stack.size() - 1);
+			if (inside.put(c, Boolean.TRUE) == null && c instanceof CompoundComponent) {
+				stack.addAll(((CompoundComponent) c).getComponents());
+			}
+		}
+
+		IdentityHashMap<Pin, Integer> number = new IdentityHashMap<>();
+		ArrayList<Pin> pins = new ArrayList<>();
+		StringBuilder sb = new StringBuilder();
+		sb.append(subtree.inputs().length).append('/').append(subtree.outputs().length);
+		number(subtree.inputs(), number, pins);
+		number(subtree.outputs(), number, pins);
+		for (IComponent leaf : Scheduler.collectLeaves(subtree)) {
+			sb.append(';').append(leaf.getClass().getName());
+			sb.append('/').append(leaf.inputs().length).append('/').append(leaf.outputs().length);
+			number(leaf.inputs(), number, pins);
+			number(leaf.outputs(), number, pins);
+		}
+		for (int i = 0; i < pins.size(); i++) {
+			IdentityHashMap<Pin, Boolean> seen = new IdentityHashMap<>();
+			ArrayList<Pin> reached = new ArrayList<>(pins.get(i).getConnections());
+			while (!reached.isEmpty()) {
+				Pin q = reached.remove(reached.size() - 1);
+				if (!inside.containsKey(q.getParent()) || seen.put(q, Boolean.TRUE) != null) {
+					continue;
+				}
+				Integer j = number.get(q);
+				if (j != null) {
+					sb.append(' ').append(i).append('>').append(j);
+				} else {
+					reached.addAll(q.getConnections());
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void number(Pin[] given, IdentityHashMap<Pin, Integer> number, ArrayList<Pin> pins) {
+		for (Pin p : given) {
+			if (!number.containsKey(p)) {
+				number.put(p, pins.size());
+				pins.add(p);
+			}
+		}
+	}
+
+	@Override
+	public Pin[] inputs() {
+		return inputs;
+	}
+
+	@Override
+	public Pin[] outputs() {
+		return outputs;
+	}
+
+	@Override
+	public boolean inputsValid() {
+		return subtree.inputsValid();
+	}
+
+	@Override
+	public boolean outputsValid() {
+		return subtree.outputsValid();
+	}
+
+	@Override
+	public void invalidateInputs() {
+		subtree.invalidateInputs();
+	}
+
+	@Override
+	public void invalidateOutputs() {
+		subtree.invalidateOutputs();
+	}
+}
@@ -0,0 +1,110 @@
+package hw4;
+
+import java.util.ArrayList;
+
+import api.IComponent;
+import api.ILatchedComponent;
+import api.IStatefulComponent;
+
+/**
+ * Drives a clock across a whole design.  Each cycle ticks every stateful
+ * component in the design at once and then settles the combinational logic
+ * with a Scheduler.
+ *
+ * Components implementing ILatchedComponent are ticked in two phases: all of
+ * them sample their inputs before any of them updates its outputs, so the
+ * order in which they are found does not matter.  Other stateful components
+ * are ticked between the two phases, so they also see the inputs from before
+ * the cycle, but may see each other's changes.
+ *
+ * @author Anji Xu
+ *
+ */
+public class Clock {
+
+	private final Scheduler scheduler;
+	private final ILatchedComponent[] latched;
+	private final IStatefulComponent[] others;
+	private boolean settled;
+	private long cycles;
+
+	/**
+	 * Constructs a clock for the given design.  As with Scheduler, the
+	 * structure of the design is captured here.
+	 * @param design the top-level component
+	 */
+	public Clock(IComponent design) {
+		scheduler = new Scheduler(design);
+		ArrayList<ILatchedComponent> two = new ArrayList<>();
+		ArrayList<IStatefulComponent> one = new ArrayList<>();
+		for (IComponent c : Scheduler.collectLeaves(design)) {
+			if (c instanceof ILatchedComponent) {
+				two.add((ILatchedComponent) c);
+			} else if (c instanceof IStatefulComponent) {
+				one.add((IStatefulComponent) c);
+			}
+		}
+		latched = two.toArray(new ILatchedComponent[0]);
+		others = one.toArray(new IStatefulComponent[0]);
+	}
+
+	/**
+	 * Sets the enabled state of every stateful component in the design.
+	 * @param enabled whether the components update on a tick
+	 */
+	public void setEnabled(boolean enabled) {
+		for (ILatchedComponent c : latched) {
+			c.setEnabled(enabled);
+		}
+		for (IStatefulComponent c : others) {
+			c.setEnabled(enabled);
+		}
+	}
+
+	/**
+	 * Settles the combinational logic without a clock edge, for example
+	 * after changing the inputs of the design.
+	 */
+	public void settle() {
+		scheduler.settle();
+		settled = true;
+	}
+
+	/**
+	 * Runs one clock cycle.
+	 */
+	public void cycle() {
+		if (!settled) {
+			settle();
+		}
+		for (ILatchedComponent c : latched) {
+			c.sample();
+		}
+		for (IStatefulComponent c : others) {
+			c.tick();
+		}
+		for (ILatchedComponent c : latched) {
+			c.commit();
+		}
+		scheduler.settle();
+		cycles++;
+	}
+
+	/**
+	 * Runs the given number of clock cycles.
+	 * @param count number of cycles
+	 */
+	public void run(long count) {
+		for (long i = 0; i < count; i++) {
+			cycle();
+		}
+	}
+
+	/**
+	 * Returns the number of cycles run so far.
+	 * @return number of cycles
+	 */
+	public long getCycles() {
+		return cycles;
+	}
+}
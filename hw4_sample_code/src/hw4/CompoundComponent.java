@@ -2,6 +2,7 @@ package hw4;
 
 import api.IComponent;
 import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Anji Xu
@@ -10,6 +11,29 @@ import java.util.ArrayList;
 public class CompoundComponent extends AbstractComponent{
 	
 	protected ArrayList<IComponent> components;
+	
+	/**
+	 * Compounds with at least this many leaf components are propagated
+	 * in parallel unless the threshold is changed.
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+	
+	/**
+	 * Scheduler for this component, built on the first call to propagate().
+	 */
+	private Scheduler scheduler;
+	
+	/**
+	 * Schedule used instead of the scheduler when propagating in parallel.
+	 */
+	private ParallelSchedule parallel;
+	
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	
+	/**
+	 * Whether stateless compounds inside this one are evaluated by truth tables.
+	 */
+	private boolean caching;
 
 	public CompoundComponent(int numInputs, int numOutputs) {
 		super(numInputs, numOutputs);
@@ -18,17 +42,100 @@ public class CompoundComponent extends AbstractComponent{
 	
 	public void addComponent​(IComponent c) {
 		components.add(c);
+		rebuildSchedule();
 	}
 	
 	public ArrayList<IComponent> getComponents(){
 		return components;
 		
 	}
+	/**
+	 * Discards the schedule built by propagate(), so that connections
+	 * made since then are taken into account.
+	 */
+	public void rebuildSchedule() {
+		scheduler = null;
+		parallel = null;
+	}
+	
+	/**
+	 * Sets the number of leaf components at or above which the independent
+	 * groups of components inside this one are propagated in parallel on the
+	 * common ForkJoinPool.  A compound with a listener on any pin inside it,
+	 * or reached from its outputs, always propagates on the calling thread;
+	 * this is checked when the schedule is built, so call rebuildSchedule()
+	 * after adding listeners to a compound that has already propagated.
+	 * @param threshold number of leaf components, or Integer.MAX_VALUE to
+	 *   always propagate on the calling thread
+	 */
+	public void setParallelThreshold(int threshold) {
+		parallelThreshold = threshold;
+		rebuildSchedule();
+	}
+	
+	/**
+	 * Turns the caching mode on or off.  In caching mode, each stateless
+	 * compound inside this one (or this one itself) with at most 16 inputs
+	 * is evaluated by looking up its packed input bits in a truth table that
+	 * is built the first time it is needed.  The pins inside such a compound
+	 * are then not updated, and listeners on them are not called.
+	 * @param enabled whether to use truth tables
+	 */
+	public void setCaching(boolean enabled) {
+		caching = enabled;
+		rebuildSchedule();
+	}
+	
+	/**
+	 * Invalidates the inputs, and makes the next propagate() evaluate every
+	 * component inside this one.
+	 */
+	@Override
+	public void invalidateInputs() {
+		super.invalidateInputs();
+		invalidateSchedule();
+	}
+	
+	/**
+	 * Invalidates the outputs, and makes the next propagate() evaluate every
+	 * component inside this one and drive the outputs again.
+	 */
+	@Override
+	public void invalidateOutputs() {
+		super.invalidateOutputs();
+		invalidateSchedule();
+	}
+	
+	private void invalidateSchedule() {
+		if (scheduler != null) {
+			scheduler.invalidate();
+		}
+		if (parallel != null) {
+			parallel.invalidate();
+		}
+	}
+	
+	/**
+	 * Evaluates the components inside this one, in topological order,
+	 * skipping those whose inputs have not changed since the last call.
+	 * Large compounds with independent groups of components evaluate
+	 * the groups in parallel.
+	 */
 	@Override
 	public void propagate() {
-		for(IComponent c: components) {
-			if(c.inputsValid()) {
-				
+		if (inputsValid()) {
+			if (scheduler == null && parallel == null) {
+				if (Scheduler.collectLeaves(this).size() >= parallelThreshold) {
+					parallel = ParallelSchedule.create(this, components, ForkJoinPool.commonPool(), caching);
+				}
+				if (parallel == null) {
+					scheduler = new Scheduler(this, caching);
+				}
+			}
+			if (parallel != null) {
+				parallel.settle();
+			} else {
+				scheduler.settle();
 			}
 		}
 	}
@@ -1,52 +1,103 @@
 package hw4;
 
-import api.IStatefulComponent;
+import api.ILatchedComponent;
 import api.Pin;
 
 /**
  * @author Anji Xu
  *
  */
-public class Counter extends AbstractComponent implements IStatefulComponent {
+public class Counter extends AbstractComponent implements ILatchedComponent {
 
-	private int currentState;
+	private long currentState;
+	private long nextState;
 	private boolean isEnabled;
 	private int size;
-	
+
+	/**
+	 * Mask for the bits of the state, since the count wraps around.
+	 */
+	private long mask;
+
+	/**
+	 * Whether the output pins may not match currentState, in which case
+	 * every output is set on the next update instead of only the changed ones.
+	 */
+	private boolean outputsStale;
+
 	public Counter(int size) {
 		super(0, size);
+		if (size > 64) {
+			throw new IllegalArgumentException("Counter size must be at most 64");
+		}
 		this.currentState = 0;
 		this.size = size;
+		this.mask = size == 64 ? -1L : (1L << size) - 1;
 		clear();
 	}
 
 
 	@Override
 	public void tick() {
-		if(isEnabled == true && inputsValid()){
-			invalidateOutputs();
-			currentState++;
-            String binary = Integer.toBinaryString(currentState);
-
-            char c = ' ';
-            int num = 0;
-
-            for (int i = 0; i < Math.min(binary.length(), size); i++) {
-                c = binary.charAt(binary.length() - i - 1);
-                num = Character.getNumericValue(c);
-                outputs()[i].set(num);
-            }
+		sample();
+		commit();
+	}
+
+	@Override
+	public void sample() {
+		nextState = currentState;
+		if (isEnabled && inputsValid()) {
+			nextState = (currentState + 1) & mask;
+		}
+	}
+
+	@Override
+	public void commit() {
+		long changed = outputsStale ? mask : nextState ^ currentState;
+		currentState = nextState;
+		outputsStale = false;
+		Pin[] out = outputs();
+		while (changed != 0) {
+			int i = Long.numberOfTrailingZeros(changed);
+			out[i].set((int) (currentState >>> i) & 1);
+			changed &= changed - 1;
 		}
-		
 	}
 
 
 	@Override
 	public void clear() {
+		currentState = 0;
+		nextState = 0;
 		for(int i = 0; i< outputs().length;i++){
 			outputs()[i].set(0);
 		}
-		
+		outputsStale = false;
+	}
+
+	/**
+	 * Sets every output from the current state, so that the values reach
+	 * pins connected after the state was last changed.
+	 */
+	@Override
+	public void propagate() {
+		nextState = currentState;
+		outputsStale = true;
+		commit();
+	}
+
+	@Override
+	public void invalidateOutputs() {
+		super.invalidateOutputs();
+		outputsStale = true;
+	}
+
+	/**
+	 * Returns the current count.
+	 * @return the current count
+	 */
+	public long getState() {
+		return currentState;
 	}
 
 
@@ -54,5 +105,5 @@ public class Counter extends AbstractComponent implements IStatefulComponent {
 	public void setEnabled(boolean enabled) {
 		isEnabled = enabled;
 	}
-	
+
 }
@@ -0,0 +1,414 @@
+package hw4;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+import api.Bus;
+import api.IComponent;
+
+/**
+ * Checks exhaustively whether a component computes the same outputs as a
+ * golden model, either a function or another component, for every assignment
+ * of its inputs.  Input i of an assignment is bit i of a long, and output k
+ * is bit k, so components may have up to 62 inputs and 64 outputs, although
+ * in practice the search is limited to about 32 inputs by time.
+ *
+ * The input space is split into chunks that worker threads take in turn, and
+ * all threads stop as soon as one finds a counterexample or fails with an
+ * exception, which is then rethrown by the check.  Components that
+ * can be compiled into a Netlist are evaluated 64 assignments at a time;
+ * others are simulated pin by pin, using a separate instance per thread
+ * obtained from the given Supplier.
+ *
+ * @author Anji Xu
+ *
+ */
+public class EquivalenceChecker {
+
+	/**
+	 * Assignments per chunk, a multiple of 64.
+	 */
+	private static final long CHUNK = 1 << 16;
+
+	/**
+	 * Outcome of a check.
+	 */
+	public static class Result {
+		private final boolean equivalent;
+		private final long inputs;
+		private final long expected;
+		private final long actual;
+		private final long checked;
+		private final long elapsedNanos;
+
+		Result(boolean equivalent, long inputs, long expected, long actual, long checked, long elapsedNanos) {
+			this.equivalent = equivalent;
+			this.inputs = inputs;
+			this.expected = expected;
+			this.actual = actual;
+			this.checked = checked;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * Returns whether the outputs agreed for every assignment.
+		 * @return true if no counterexample was found
+		 */
+		public boolean isEquivalent() {
+			return equivalent;
+		}
+
+		/**
+		 * Returns the input assignment of the counterexample.
+		 * @return input bits, or -1 if equivalent
+		 */
+		public long getInputs() {
+			return inputs;
+		}
+
+		/**
+		 * Returns the outputs of the golden model for the counterexample.
+		 * @return output bits, or -1 if equivalent
+		 */
+		public long getExpected() {
+			return expected;
+		}
+
+		/**
+		 * Returns the outputs of the component for the counterexample.
+		 * @return output bits, or -1 if equivalent
+		 */
+		public long getActual() {
+			return actual;
+		}
+
+		/**
+		 * Returns the number of assignments checked, counting whole chunks.
+		 * @return number of assignments
+		 */
+		public long getChecked() {
+			return checked;
+		}
+
+		/**
+		 * Returns the time taken by the check.
+		 * @return elapsed time in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			String time = String.format("%.3f s", elapsedNanos / 1e9);
+			if (equivalent) {
+				return "equivalent, " + checked + " assignments in " + time;
+			}
+			return "counterexample inputs=" + Long.toBinaryString(inputs) + " expected=" + Long.toBinaryString(expected)
+					+ " actual=" + Long.toBinaryString(actual) + ", " + checked + " assignments in " + time;
+		}
+	}
+
+	private final int threads;
+
+	/**
+	 * Constructs a checker using one thread per available processor.
+	 */
+	public EquivalenceChecker() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a checker using the given number of threads.
+	 * @param threads number of worker threads
+	 */
+	public EquivalenceChecker(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Checks a component against a function from input bits to output bits.
+	 * @param component creates instances of the component; called once per thread
+	 *   if the component cannot be compiled into a Netlist
+	 * @param golden the expected outputs for each input assignment; must be
+	 *   safe to call from several threads
+	 * @return result of the check
+	 * @throws IllegalStateException if the golden function or the component
+	 *   throws an exception during the check
+	 */
+	public Result check(Supplier<? extends IComponent> component, LongUnaryOperator golden) {
+		IComponent first = component.get();
+		int numInputs = first.inputs().length;
+		int numOutputs = first.outputs().length;
+		Side actual = sideFor(component, first);
+		return run(numInputs, numOutputs, new FunctionSide(golden), actual);
+	}
+
+	/**
+	 * Checks a component against a reference component with the same
+	 * numbers of inputs and outputs.
+	 * @param component creates instances of the component being checked
+	 * @param reference creates instances of the reference component
+	 * @return result of the check
+	 * @throws IllegalArgumentException if the numbers of inputs or outputs differ
+	 * @throws IllegalStateException if either component throws an exception
+	 *   during the check
+	 */
+	public Result check(Supplier<? extends IComponent> component, Supplier<? extends IComponent> reference) {
+		IComponent first = component.get();
+		IComponent ref = reference.get();
+		int numInputs = first.inputs().length;
+		int numOutputs = first.outputs().length;
+		if (ref.inputs().length != numInputs || ref.outputs().length != numOutputs) {
+			throw new IllegalArgumentException("Components have different numbers of inputs or outputs");
+		}
+		return run(numInputs, numOutputs, sideFor(reference, ref), sideFor(component, first));
+	}
+
+	/**
+	 * Runs the worker threads over the whole input space.
+	 */
+	private Result run(int numInputs, int numOutputs, Side expected, Side actual) {
+		if (numInputs > 62 || numOutputs > 64) {
+			throw new IllegalArgumentException("At most 62 inputs and 64 outputs are supported");
+		}
+		long start = System.nanoTime();
+		final long size = 1L << numInputs;
+		final long outputMask = numOutputs == 64 ? -1L : (1L << numOutputs) - 1;
+		final AtomicLong next = new AtomicLong();
+		final AtomicLong checked = new AtomicLong();
+		final AtomicLong found = new AtomicLong(Long.MAX_VALUE);
+		final long[][] witness = new long[1][];
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		Thread[] workers = new Thread[(int) Math.min(threads, (size + CHUNK - 1) / CHUNK)];
+		for (int t = 0; t < workers.length; t++) {
+			final Worker expectedWorker = expected.newWorker();
+			final Worker actualWorker = actual.newWorker();
+			workers[t] = new Thread(() -> {
+				try {
+					compare(expectedWorker, actualWorker, size, outputMask, next, checked, found, witness);
+				} catch (Throwable ex) {
+					failure.compareAndSet(null, ex);
+					// stop the other workers as a counterexample would
+					found.set(-1);
+				}
+			});
+			workers[t].start();
+		}
+		try {
+			for (Thread w : workers) {
+				w.join();
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while checking", ex);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		if (failure.get() != null) {
+			throw new IllegalStateException("Evaluation failed during check", failure.get());
+		}
+		if (found.get() == Long.MAX_VALUE) {
+			if (checked.get() != size) {
+				throw new IllegalStateException("Checked " + checked.get() + " of " + size + " assignments");
+			}
+			return new Result(true, -1, -1, -1, checked.get(), elapsed);
+		}
+		return new Result(false, found.get(), witness[0][0], witness[0][1], checked.get(), elapsed);
+	}
+
+	/**
+	 * Takes chunks of the input space in turn and compares both sides on
+	 * them until the space is exhausted or a counterexample is found,
+	 * recording in found and witness the smallest counterexample seen.
+	 */
+	private static void compare(Worker expectedWorker, Worker actualWorker, long size, long outputMask, AtomicLong next,
+			AtomicLong checked, AtomicLong found, long[][] witness) {
+		long[] e = new long[64];
+		long[] a = new long[64];
+		long chunk;
+		while (found.get() == Long.MAX_VALUE && (chunk = next.getAndAdd(CHUNK)) < size) {
+			long end = Math.min(size, chunk + CHUNK);
+			for (long base = chunk; base < end; base += 64) {
+				int lanes = (int) Math.min(64, end - base);
+				long diff;
+				if (expectedWorker instanceof NetlistWorker && actualWorker instanceof NetlistWorker) {
+					diff = ((NetlistWorker) actualWorker).compareWords(base, (NetlistWorker) expectedWorker);
+					if (lanes < 64) {
+						diff &= (1L << lanes) - 1;
+					}
+					if (diff != 0) {
+						expectedWorker.evaluate(base, lanes, e);
+						actualWorker.evaluate(base, lanes, a);
+					}
+				} else {
+					expectedWorker.evaluate(base, lanes, e);
+					actualWorker.evaluate(base, lanes, a);
+					diff = 0;
+					for (int j = 0; j < lanes; j++) {
+						if (((e[j] ^ a[j]) & outputMask) != 0) {
+							diff |= 1L << j;
+						}
+					}
+				}
+				if (diff != 0) {
+					int j = Long.numberOfTrailingZeros(diff);
+					long inputs = base + j;
+					synchronized (witness) {
+						if (inputs < found.get()) {
+							found.set(inputs);
+							witness[0] = new long[] { e[j] & outputMask, a[j] & outputMask };
+						}
+					}
+					break;
+				}
+			}
+			checked.addAndGet(end - chunk);
+		}
+	}
+
+	/**
+	 * Returns the fastest available way to evaluate a component.
+	 */
+	private static Side sideFor(Supplier<? extends IComponent> component, IComponent first) {
+		try {
+			return new NetlistSide(Netlist.compile(first));
+		} catch (IllegalArgumentException e) {
+			return new ComponentSide(component, first);
+		}
+	}
+
+	/**
+	 * One side of the comparison, creating an evaluator for each thread.
+	 */
+	private interface Side {
+		Worker newWorker();
+	}
+
+	/**
+	 * Per-thread evaluator of one side.
+	 */
+	private interface Worker {
+		/**
+		 * Stores in outputs[j] the output bits for input assignment base + j,
+		 * for each lane j less than lanes.
+		 */
+		void evaluate(long base, int lanes, long[] outputs);
+	}
+
+	private static class FunctionSide implements Side, Worker {
+		private final LongUnaryOperator golden;
+
+		FunctionSide(LongUnaryOperator golden) {
+			this.golden = golden;
+		}
+
+		@Override
+		public Worker newWorker() {
+			return this;
+		}
+
+		@Override
+		public void evaluate(long base, int lanes, long[] outputs) {
+			for (int j = 0; j < lanes; j++) {
+				outputs[j] = golden.applyAsLong(base + j);
+			}
+		}
+	}
+
+	private static class NetlistSide implements Side {
+		private final Netlist netlist;
+
+		NetlistSide(Netlist netlist) {
+			this.netlist = netlist;
+		}
+
+		@Override
+		public Worker newWorker() {
+			return new NetlistWorker(netlist);
+		}
+	}
+
+	private static class NetlistWorker implements Worker {
+		private final Netlist netlist;
+		private final long[] inputs;
+		private final long[] outputs;
+		private final long[] work;
+
+		NetlistWorker(Netlist netlist) {
+			this.netlist = netlist;
+			inputs = new long[netlist.getInputCount()];
+			outputs = new long[netlist.getOutputCount()];
+			work = new long[netlist.getSignalCount()];
+		}
+
+		/**
+		 * Evaluates the 64 lanes starting at base with both netlists and
+		 * returns a word with a bit set for each lane where they differ.
+		 */
+		long compareWords(long base, NetlistWorker other) {
+			Netlist.fillInputs(base, inputs);
+			netlist.evaluate(inputs, outputs, work);
+			other.netlist.evaluate(inputs, other.outputs, other.work);
+			long diff = 0;
+			for (int k = 0; k < outputs.length; k++) {
+				diff |= outputs[k] ^ other.outputs[k];
+			}
+			return diff;
+		}
+
+		@Override
+		public void evaluate(long base, int lanes, long[] result) {
+			Netlist.fillInputs(base, inputs);
+			netlist.evaluate(inputs, outputs, work);
+			for (int j = 0; j < lanes; j++) {
+				long value = 0;
+				for (int k = 0; k < outputs.length; k++) {
+					value |= ((outputs[k] >>> j) & 1) << k;
+				}
+				result[j] = value;
+			}
+		}
+	}
+
+	private static class ComponentSide implements Side {
+		private final Supplier<? extends IComponent> supplier;
+		private IComponent unused;
+
+		ComponentSide(Supplier<? extends IComponent> supplier, IComponent first) {
+			this.supplier = supplier;
+			this.unused = first;
+		}
+
+		@Override
+		public Worker newWorker() {
+			IComponent c = unused != null ? unused : supplier.get();
+			unused = null;
+			return new ComponentWorker(c);
+		}
+	}
+
+	private static class ComponentWorker implements Worker {
+		private final IComponent component;
+		private final Bus in;
+		private final Bus out;
+
+		ComponentWorker(IComponent component) {
+			this.component = component;
+			in = new Bus(component.inputs());
+			out = new Bus(component.outputs());
+		}
+
+		@Override
+		public void evaluate(long base, int lanes, long[] outputs) {
+			for (int j = 0; j < lanes; j++) {
+				in.write(base + j);
+				component.propagate();
+				outputs[j] = out.read();
+			}
+		}
+	}
+}
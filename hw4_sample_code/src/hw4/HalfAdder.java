@@ -23,7 +23,7 @@ public class HalfAdder extends CompoundComponent{
 		
 		orGate.outputs()[0].connectTo(andGate2.inputs()[0]);
 		andGate.outputs()[0].connectTo(notGate.inputs()[0]);
-		notGate.outputs()[0].connectTo(andGate.inputs()[1]);
+		notGate.outputs()[0].connectTo(andGate2.inputs()[1]);
 		
 		andGate2.outputs()[0].connectTo(outputs()[0]);
 		andGate.outputs()[0].connectTo(outputs()[1]);
@@ -8,15 +8,26 @@ import api.IComponent;
  */
 public class MultiComponent extends CompoundComponent implements IComponent{
 
+	/**
+	 * Constructs a component from copies of the same kind of component,
+	 * all with the same number of inputs and outputs.  The inputs and outputs
+	 * of components[i] are the i-th block of the inputs and outputs of this one.
+	 * Since the components are independent, large ones propagate in parallel.
+	 * @param components the components to combine
+	 */
 	public MultiComponent(IComponent[] components) {
-		super(components[0].inputs().length * components.length, components.length);
-
-	}
-	
-	@Override
-	public void propagate() {
-		for(IComponent c : getComponents()) {
-			c.propagate();
+		super(components[0].inputs().length * components.length, components[0].outputs().length * components.length);
+		int in = components[0].inputs().length;
+		int out = components[0].outputs().length;
+		for (int i = 0; i < components.length; i++) {
+			IComponent c = components[i];
+			addComponent(c);
+			for (int j = 0; j < in; j++) {
+				inputs()[i * in + j].connectTo(c.inputs()[j]);
+			}
+			for (int j = 0; j < out; j++) {
+				c.outputs()[j].connectTo(outputs()[i * out + j]);
+			}
 		}
 	}
 
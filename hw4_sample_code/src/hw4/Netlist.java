@@ -0,0 +1,376 @@
+package hw4;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import api.IComponent;
+import api.Pin;
+
+/**
+ * A component tree flattened into a levelized list of primitive gates.
+ * Every top-level input and every gate output is a signal, numbered with
+ * the inputs first.  Gates are stored in int arrays, sorted so that each
+ * gate comes after the gates driving it, and are evaluated on long words
+ * so that 64 independent input vectors are simulated at once: bit j of
+ * every word belongs to vector j.
+ *
+ * Only trees whose leaves are AndGate, OrGate and NotGate can be compiled.
+ *
+ * @author Anji Xu
+ *
+ */
+public class Netlist {
+
+	/**
+	 * Operation codes for the gates.
+	 */
+	public static final int AND = 0;
+	public static final int OR = 1;
+	public static final int NOT = 2;
+
+	/**
+	 * Bit patterns for the low six input bits, so that lane j of the words
+	 * for inputs 0 through 5 holds the bits of j.
+	 */
+	private static final long[] LANE_PATTERNS = {
+		0xAAAAAAAAAAAAAAAAL,
+		0xCCCCCCCCCCCCCCCCL,
+		0xF0F0F0F0F0F0F0F0L,
+		0xFF00FF00FF00FF00L,
+		0xFFFF0000FFFF0000L,
+		0xFFFFFFFF00000000L,
+	};
+
+	private final int numInputs;
+	private final int numSignals;
+
+	// gate i computes signal out[i] = op[i](in0[i], in1[i]); in1 is unused for NOT
+	private final int[] op;
+	private final int[] in0;
+	private final int[] in1;
+	private final int[] out;
+
+	/**
+	 * Gates at level k are levelStart[k] up to levelStart[k + 1] - 1.
+	 */
+	private final int[] levelStart;
+
+	/**
+	 * Signal driving each top-level output.
+	 */
+	private final int[] outputSignals;
+
+	private Netlist(int numInputs, int[] op, int[] in0, int[] in1, int[] out, int[] levelStart, int[] outputSignals) {
+		this.numInputs = numInputs;
+		this.numSignals = numInputs + op.length;
+		this.op = op;
+		this.in0 = in0;
+		this.in1 = in1;
+		this.out = out;
+		this.levelStart = levelStart;
+		this.outputSignals = outputSignals;
+	}
+
+	/**
+	 * Compiles the given component into a netlist.
+	 * @param top the component to compile
+	 * @return netlist computing the outputs of the component from its inputs
+	 * @throws IllegalArgumentException if the tree contains a leaf that is not a primitive
+	 *   gate, a gate input or top-level output is not driven, or the gates form a cycle
+	 */
+	public static Netlist compile(IComponent top) {
+		ArrayList<IComponent> gates = Scheduler.collectLeaves(top);
+		int numInputs = top.inputs().length;
+		int n = gates.size();
+		int[] ops = new int[n];
+		for (int i = 0; i < n; i++) {
+			ops[i] = opFor(gates.get(i));
+			if (ops[i] < 0) {
+				throw new IllegalArgumentException("Not a primitive gate: " + gates.get(i).getClass().getSimpleName());
+			}
+		}
+
+		// assign a signal to every pin reached from each driver
+		IdentityHashMap<Pin, Integer> signalOf = new IdentityHashMap<>();
+		for (int i = 0; i < numInputs; i++) {
+			label(top.inputs()[i], i, signalOf);
+		}
+		for (int i = 0; i < n; i++) {
+			label(gates.get(i).outputs()[0], numInputs + i, signalOf);
+		}
+
+		// inputs of each gate, by signal
+		int[][] args = new int[n][];
+		for (int i = 0; i < n; i++) {
+			Pin[] pins = gates.get(i).inputs();
+			args[i] = new int[pins.length];
+			for (int k = 0; k < pins.length; k++) {
+				Integer s = signalOf.get(pins[k]);
+				if (s == null) {
+					throw new IllegalArgumentException("Input " + k + " of " + gates.get(i).getClass().getSimpleName() + " is not connected");
+				}
+				args[i][k] = s;
+			}
+		}
+
+		// level of each gate is one more than the deepest gate feeding it
+		int[] level = new int[n];
+		int[] state = new int[n]; // 0 = unvisited, 1 = in progress, 2 = done
+		int maxLevel = 0;
+		for (int i = 0; i < n; i++) {
+			maxLevel = Math.max(maxLevel, computeLevel(i, args, numInputs, level, state));
+		}
+
+		// counting sort by level
+		int[] levelStart = new int[maxLevel + 2];
+		for (int i = 0; i < n; i++) {
+			levelStart[level[i] + 1]++;
+		}
+		for (int k = 0; k <= maxLevel; k++) {
+			levelStart[k + 1] += levelStart[k];
+		}
+		int[] position = new int[n];
+		int[] next = levelStart.clone();
+		for (int i = 0; i < n; i++) {
+			position[i] = next[level[i]]++;
+		}
+
+		// renumber gate signals by position so the netlist is in evaluation order
+		int[] op = new int[n];
+		int[] in0 = new int[n];
+		int[] in1 = new int[n];
+		int[] out = new int[n];
+		for (int i = 0; i < n; i++) {
+			int p = position[i];
+			op[p] = ops[i];
+			in0[p] = renumber(args[i][0], numInputs, position);
+			in1[p] = args[i].length > 1 ? renumber(args[i][1], numInputs, position) : 0;
+			out[p] = numInputs + p;
+		}
+
+		Pin[] outputs = top.outputs();
+		int[] outputSignals = new int[outputs.length];
+		for (int k = 0; k < outputs.length; k++) {
+			Integer s = signalOf.get(outputs[k]);
+			if (s == null) {
+				throw new IllegalArgumentException("Output " + k + " is not connected");
+			}
+			outputSignals[k] = renumber(s, numInputs, position);
+		}
+		return new Netlist(numInputs, op, in0, in1, out, levelStart, outputSignals);
+	}
+
+	/**
+	 * Returns the number of top-level inputs.
+	 * @return number of inputs
+	 */
+	public int getInputCount() {
+		return numInputs;
+	}
+
+	/**
+	 * Returns the number of top-level outputs.
+	 * @return number of outputs
+	 */
+	public int getOutputCount() {
+		return outputSignals.length;
+	}
+
+	/**
+	 * Returns the number of gates.
+	 * @return number of gates
+	 */
+	public int getGateCount() {
+		return op.length;
+	}
+
+	/**
+	 * Returns the number of signals, which is the size needed for the
+	 * work array passed to evaluate().
+	 * @return number of signals
+	 */
+	public int getSignalCount() {
+		return numSignals;
+	}
+
+	/**
+	 * Returns the number of levels, that is, the length of the longest
+	 * path of gates from an input to an output.
+	 * @return number of levels
+	 */
+	public int getLevelCount() {
+		return levelStart.length - 1;
+	}
+
+	/**
+	 * Evaluates 64 input vectors at once.  Bit j of inputs[i] is the value
+	 * of input i in vector j, and bit j of outputs[k] is set to the value of
+	 * output k for vector j.  No objects are allocated, and a netlist may be
+	 * evaluated by several threads at once as long as each uses its own
+	 * work array.
+	 * @param inputs one word per input
+	 * @param outputs one word per output, filled in by this method
+	 * @param work array of at least getSignalCount() words
+	 */
+	public void evaluate(long[] inputs, long[] outputs, long[] work) {
+		System.arraycopy(inputs, 0, work, 0, numInputs);
+		for (int i = 0; i < op.length; i++) {
+			long a = work[in0[i]];
+			long v;
+			switch (op[i]) {
+			case AND:
+				v = a & work[in1[i]];
+				break;
+			case OR:
+				v = a | work[in1[i]];
+				break;
+			default:
+				v = ~a;
+				break;
+			}
+			work[out[i]] = v;
+		}
+		for (int k = 0; k < outputSignals.length; k++) {
+			outputs[k] = work[outputSignals[k]];
+		}
+	}
+
+	/**
+	 * Evaluates 64 input vectors at once, allocating the output and work arrays.
+	 * @param inputs one word per input
+	 * @return one word per output
+	 */
+	public long[] evaluate(long[] inputs) {
+		long[] outputs = new long[outputSignals.length];
+		evaluate(inputs, outputs, new long[numSignals]);
+		return outputs;
+	}
+
+	/**
+	 * Fills in the input words for the 64 consecutive input assignments
+	 * starting at <code>base</code>, which must be a multiple of 64 when
+	 * there are more than six inputs.  Lane j gets the assignment base + j,
+	 * with input i given by bit i.
+	 * @param base first input assignment
+	 * @param inputs one word per input, filled in by this method
+	 */
+	public static void fillInputs(long base, long[] inputs) {
+		for (int i = 0; i < inputs.length; i++) {
+			if (i < LANE_PATTERNS.length) {
+				inputs[i] = LANE_PATTERNS[i];
+			} else {
+				inputs[i] = ((base >>> i) & 1) == 0 ? 0 : -1L;
+			}
+		}
+	}
+
+	/**
+	 * Computes the full truth table.  Entry v is the output value, with
+	 * output k as bit k, for the input assignment v, with input i as bit i.
+	 * @return truth table with 2^n entries for n inputs
+	 * @throws IllegalArgumentException if there are more than 30 inputs or 32 outputs
+	 */
+	public int[] truthTable() {
+		if (numInputs > 30 || outputSignals.length > 32) {
+			throw new IllegalArgumentException("Too many inputs or outputs for a truth table");
+		}
+		int size = 1 << numInputs;
+		int[] table = new int[size];
+		long[] inputs = new long[numInputs];
+		long[] outputs = new long[outputSignals.length];
+		long[] work = new long[numSignals];
+		for (int base = 0; base < size; base += 64) {
+			fillInputs(base, inputs);
+			evaluate(inputs, outputs, work);
+			int lanes = Math.min(64, size - base);
+			for (int j = 0; j < lanes; j++) {
+				int value = 0;
+				for (int k = 0; k < outputs.length; k++) {
+					value |= (int) ((outputs[k] >>> j) & 1) << k;
+				}
+				table[base + j] = value;
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the operation code for a primitive gate, or -1.
+	 */
+	private static int opFor(IComponent c) {
+		if (c instanceof AndGate) {
+			return AND;
+		}
+		if (c instanceof OrGate) {
+			return OR;
+		}
+		if (c instanceof NotGate) {
+			return NOT;
+		}
+		return -1;
+	}
+
+	/**
+	 * Gives the signal to the driver pin and every pin reached from it.
+	 */
+	private static void label(Pin driver, int signal, IdentityHashMap<Pin, Integer> signalOf) {
+		ArrayList<Pin> stack = new ArrayList<>();
+		stack.add(driver);
+		while (!stack.isEmpty()) {
+			Pin p = stack.remove(stack.size() - 1);
+			Integer old = signalOf.put(p, signal);
+			if (old != null && old != signal) {
+				throw new IllegalArgumentException("Pin of " + p.getParent().getClass().getSimpleName() + " has more than one driver");
+			}
+			if (old == null) {
+				stack.addAll(p.getConnections());
+			}
+		}
+	}
+
+	/**
+	 * Computes the level of gate i without recursion, detecting cycles.
+	 */
+	private static int computeLevel(int start, int[][] args, int numInputs, int[] level, int[] state) {
+		if (state[start] == 2) {
+			return level[start];
+		}
+		ArrayList<Integer> stack = new ArrayList<>();
+		stack.add(start);
+		while (!stack.isEmpty()) {
+			int i = stack.get(stack.size() - 1);
+			if (state[i] == 0) {
+				state[i] = 1;
+				for (int s : args[i]) {
+					int g = s - numInputs;
+					if (g >= 0) {
+						if (state[g] == 1) {
+							throw new IllegalArgumentException("Gates form a combinational cycle");
+						}
+						if (state[g] == 0) {
+							stack.add(g);
+						}
+					}
+				}
+			} else {
+				stack.remove(stack.size() - 1);
+				if (state[i] == 1) {
+					int max = -1;
+					for (int s : args[i]) {
+						int g = s - numInputs;
+						if (g >= 0) {
+							max = Math.max(max, level[g]);
+						}
+					}
+					level[i] = max + 1;
+					state[i] = 2;
+				}
+			}
+		}
+		return level[start];
+	}
+
+	private static int renumber(int signal, int numInputs, int[] position) {
+		return signal < numInputs ? signal : numInputs + position[signal - numInputs];
+	}
+}
@@ -0,0 +1,253 @@
+package hw4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import api.IComponent;
+import api.Pin;
+
+/**
+ * Evaluation of the children of a compound component in parallel.  The
+ * children are partitioned into groups that are not connected to each other:
+ * two children are in the same group if a pin inside one of them is connected,
+ * directly or through other pins, to a pin inside the other.  Pins of the
+ * parent are not followed, so children that only share the parent's inputs,
+ * as in a MultiComponent, end up in separate groups.  The parent's outputs
+ * are followed, though, since their values change during a settle.  Each
+ * group has its own Scheduler, and the groups are divided into a few batches
+ * of similar size that are settled on a ForkJoinPool.
+ *
+ * Listeners expect to be called from the simulation thread, for example
+ * by WaveformRecorder, so a parent with a listener on any pin inside it or
+ * reached from its outputs is not given a parallel schedule.  The check is
+ * made when the schedule is created.
+ *
+ * @author Anji Xu
+ *
+ */
+class ParallelSchedule {
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Schedulers for the groups, divided into batches.
+	 */
+	private final Scheduler[][] batches;
+
+	/**
+	 * Outputs of the parent, and the pin connected directly to each one,
+	 * driven again on the calling thread after every settle.
+	 */
+	private final Pin[] outputs;
+	private final Pin[] drivers;
+
+	/**
+	 * Returns a schedule for the given children of the parent, or null if
+	 * the children form a single group or a pin they set has a listener.
+	 * @param parent the compound component
+	 * @param children the components inside the parent
+	 * @param pool pool on which to settle the groups
+	 * @param cache whether the group schedulers use truth tables for stateless compounds
+	 * @return the schedule, or null
+	 */
+	static ParallelSchedule create(IComponent parent, List<IComponent> children, ForkJoinPool pool, boolean cache) {
+		int n = children.size();
+
+		// which child each component and pin inside the parent belongs to
+		IdentityHashMap<IComponent, Integer> owner = new IdentityHashMap<>();
+		for (int i = 0; i < n; i++) {
+			ArrayList<IComponent> stack = new ArrayList<>();
+			stack.add(children.get(i));
+			while (!stack.isEmpty()) {
+				IComponent c = stack.remove(stack.size() - 1);
+				if (owner.put(c, i) == null && c instanceof CompoundComponent) {
+					stack.addAll(((CompoundComponent) c).getComponents());
+				}
+			}
+		}
+
+		// union the children connected through their pins, in either
+		// direction, and through the parent's outputs
+		int[] group = new int[n];
+		for (int i = 0; i < n; i++) {
+			group[i] = i;
+		}
+		IdentityHashMap<Pin, Integer> parentOutputs = new IdentityHashMap<>();
+		for (Pin p : parent.outputs()) {
+			parentOutputs.put(p, -1);
+		}
+		for (IComponent c : owner.keySet()) {
+			int i = owner.get(c);
+			for (Pin[] pins : Arrays.asList(c.inputs(), c.outputs())) {
+				for (Pin p : pins) {
+					if (p.hasListeners()) {
+						return null;
+					}
+					for (Pin q : p.getConnections()) {
+						Integer j = owner.get(q.getParent());
+						if (j != null) {
+							union(group, i, j);
+						} else if (parentOutputs.containsKey(q)) {
+							int k = parentOutputs.get(q);
+							if (k >= 0) {
+								union(group, i, k);
+							}
+							parentOutputs.put(q, i);
+						}
+					}
+				}
+			}
+		}
+		for (Pin p : parent.outputs()) {
+			int i = parentOutputs.get(p);
+			for (Pin q : p.getConnections()) {
+				Integer j = owner.get(q.getParent());
+				if (j != null && i >= 0) {
+					union(group, i, j);
+				}
+			}
+		}
+		if (reachesListener(parent.outputs())) {
+			return null;
+		}
+
+		// collect the members of each group
+		ArrayList<ArrayList<IComponent>> members = new ArrayList<>();
+		int[] index = new int[n];
+		Arrays.fill(index, -1);
+		for (int i = 0; i < n; i++) {
+			int root = find(group, i);
+			if (index[root] < 0) {
+				index[root] = members.size();
+				members.add(new ArrayList<IComponent>());
+			}
+			members.get(index[root]).add(children.get(i));
+		}
+		if (members.size() < 2) {
+			return null;
+		}
+
+		Scheduler[] schedulers = new Scheduler[members.size()];
+		for (int g = 0; g < schedulers.length; g++) {
+			schedulers[g] = new Scheduler(parent, members.get(g), cache);
+		}
+		return new ParallelSchedule(parent, schedulers, pool);
+	}
+
+	private ParallelSchedule(IComponent parent, Scheduler[] schedulers, ForkJoinPool pool) {
+		this.pool = pool;
+		outputs = parent.outputs();
+		drivers = Scheduler.findDrivers(parent);
+
+		// largest groups first, each into the lightest batch
+		Arrays.sort(schedulers, (a, b) -> b.getLeafCount() - a.getLeafCount());
+		int count = Math.min(schedulers.length, 4 * pool.getParallelism());
+		ArrayList<ArrayList<Scheduler>> lists = new ArrayList<>();
+		long[] load = new long[count];
+		for (int b = 0; b < count; b++) {
+			lists.add(new ArrayList<Scheduler>());
+		}
+		for (Scheduler s : schedulers) {
+			int lightest = 0;
+			for (int b = 1; b < count; b++) {
+				if (load[b] < load[lightest]) {
+					lightest = b;
+				}
+			}
+			lists.get(lightest).add(s);
+			load[lightest] += s.getLeafCount();
+		}
+		batches = new Scheduler[count][];
+		for (int b = 0; b < count; b++) {
+			batches[b] = lists.get(b).toArray(new Scheduler[0]);
+		}
+	}
+
+	/**
+	 * Settles every group, returning when all are done.
+	 */
+	void settle() {
+		for (Pin d : drivers) {
+			if (d != null && !d.isValid()) {
+				invalidate();
+				break;
+			}
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				ArrayList<RecursiveAction> tasks = new ArrayList<>();
+				for (final Scheduler[] batch : batches) {
+					tasks.add(new RecursiveAction() {
+						private static final long serialVersionUID = 1L;
+
+						@Override
+						protected void compute() {
+							for (Scheduler s : batch) {
+								s.settle();
+							}
+						}
+					});
+				}
+				invokeAll(tasks);
+			}
+		});
+		Scheduler.redrive(outputs, drivers);
+	}
+
+	/**
+	 * Makes the next settle of every group evaluate all of its leaves.
+	 */
+	void invalidate() {
+		for (Scheduler[] batch : batches) {
+			for (Scheduler s : batch) {
+				s.invalidate();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of batches settled in parallel.
+	 */
+	int getBatchCount() {
+		return batches.length;
+	}
+
+	/**
+	 * Returns whether any of the given pins, or a pin reached from them
+	 * through connections, has a listener.
+	 */
+	private static boolean reachesListener(Pin[] start) {
+		IdentityHashMap<Pin, Boolean> seen = new IdentityHashMap<>();
+		ArrayList<Pin> stack = new ArrayList<>(Arrays.asList(start));
+		while (!stack.isEmpty()) {
+			Pin p = stack.remove(stack.size() - 1);
+			if (seen.put(p, Boolean.TRUE) != null) {
+				continue;
+			}
+			if (p.hasListeners()) {
+				return true;
+			}
+			stack.addAll(p.getConnections());
+		}
+		return false;
+	}
+
+	private static int find(int[] group, int i) {
+		while (group[i] != i) {
+			group[i] = group[group[i]];
+			i = group[i];
+		}
+		return i;
+	}
+
+	private static void union(int[] group, int i, int j) {
+		group[find(group, i)] = find(group, j);
+	}
+}
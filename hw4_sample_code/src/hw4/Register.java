@@ -1,30 +1,114 @@
 package hw4;
 
-import api.IStatefulComponent;
+import api.ILatchedComponent;
+import api.Pin;
 
-public class Register extends AbstractComponent implements IStatefulComponent{
+/**
+ * A register with the same number of inputs and outputs.  On each tick, if
+ * it is enabled and its inputs are valid, the outputs take the values of the
+ * inputs.  The state is kept packed in long words.
+ *
+ * @author Anji Xu
+ *
+ */
+public class Register extends AbstractComponent implements ILatchedComponent{
+
+	private final long[] currentState;
+	private final long[] nextState;
+	private boolean isEnabled;
+
+	/**
+	 * Whether the output pins may not match currentState, in which case
+	 * every output is set on the next update instead of only the changed ones.
+	 */
+	private boolean outputsStale;
 
 	public Register(int size) {
 		super(size,size);
-		
+		currentState = new long[(size + 63) / 64];
+		nextState = new long[currentState.length];
+		clear();
 	}
 
 	@Override
 	public void tick() {
-		// TODO Auto-generated method stub
-		
+		sample();
+		commit();
+	}
+
+	@Override
+	public void sample() {
+		if (!isEnabled) {
+			System.arraycopy(currentState, 0, nextState, 0, currentState.length);
+			return;
+		}
+		Pin[] in = inputs();
+		for (int w = 0; w < nextState.length; w++) {
+			long word = 0;
+			int end = Math.min(in.length, 64 * w + 64);
+			for (int i = 64 * w; i < end; i++) {
+				Pin p = in[i];
+				if (!p.isValid()) {
+					// keep the current state unless all inputs are valid
+					System.arraycopy(currentState, 0, nextState, 0, currentState.length);
+					return;
+				}
+				word |= (long) (p.getValue() & 1) << i;
+			}
+			nextState[w] = word;
+		}
+	}
+
+	@Override
+	public void commit() {
+		Pin[] out = outputs();
+		for (int w = 0; w < currentState.length; w++) {
+			long changed = outputsStale ? -1L : nextState[w] ^ currentState[w];
+			currentState[w] = nextState[w];
+			while (changed != 0) {
+				int i = 64 * w + Long.numberOfTrailingZeros(changed);
+				if (i >= out.length) {
+					break;
+				}
+				out[i].set((int) (currentState[w] >>> i) & 1);
+				changed &= changed - 1;
+			}
+		}
+		outputsStale = false;
 	}
 
 	@Override
 	public void setEnabled(boolean enabled) {
-		// TODO Auto-generated method stub
-		
+		isEnabled = enabled;
 	}
 
 	@Override
 	public void clear() {
-		// TODO Auto-generated method stub
-		
+		for (int w = 0; w < currentState.length; w++) {
+			currentState[w] = 0;
+			nextState[w] = 0;
+		}
+		for (Pin p : outputs()) {
+			p.set(0);
+		}
+		outputsStale = false;
+	}
+
+	/**
+	 * Sets every output from the current state, so that the values reach
+	 * pins connected after the state was last changed.
+	 */
+	@Override
+	public void propagate() {
+		System.arraycopy(currentState, 0, nextState, 0, currentState.length);
+		outputsStale = true;
+		commit();
+	}
+
+	@Override
+	public void invalidateOutputs() {
+		super.invalidateOutputs();
+		outputsStale = true;
 	}
 
 }
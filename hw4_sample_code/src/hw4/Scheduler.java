@@ -0,0 +1,545 @@
+package hw4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import api.IComponent;
+import api.IStatefulComponent;
+import api.Pin;
+
+/**
+ * Event-driven evaluation of a component tree.  The tree is flattened once
+ * into its leaf components (those that are not a CompoundComponent), which are
+ * sorted in topological order.  Each call to settle() looks for changed values
+ * on the top-level inputs and on the outputs of stateful components, and then
+ * works through a queue of dirty leaves in topological order.  A leaf is
+ * dirty when the value of a pin feeding it has changed, so a leaf whose
+ * inputs did not change is not evaluated, and each leaf of an acyclic
+ * circuit is evaluated at most once per settle.
+ *
+ * Stateful components are treated as sources: their outputs only change on
+ * tick(), so they never need to be evaluated during a settle.
+ *
+ * Pins can be invalidated behind the scheduler's back, which leaves the
+ * values it remembers out of date.  Each settle therefore ends by driving
+ * the top-level outputs again from the pins connected to them, and starts
+ * with a full pass over all leaves when invalidate() has been called or one
+ * of those pins has been found invalid.
+ *
+ * @author Anji Xu
+ *
+ */
+public class Scheduler {
+
+	/**
+	 * A circuit with feedback that is still changing after this many
+	 * evaluations per leaf is considered not to settle.
+	 */
+	private static final int MAX_EVALUATIONS_PER_LEAF = 64;
+
+	/**
+	 * Leaf components in topological order.
+	 */
+	private final IComponent[] leaves;
+
+	/**
+	 * Whether each leaf is stateful.
+	 */
+	private final boolean[] stateful;
+
+	/**
+	 * Pins watched for changes: the top-level inputs followed by
+	 * the outputs of each leaf.
+	 */
+	private final Pin[] watched;
+
+	/**
+	 * Last value seen on each watched pin, or -1 if it was invalid.
+	 */
+	private final int[] lastValue;
+
+	/**
+	 * Leaves fed by watched pin i are fanout[fanoutStart[i]] up to
+	 * fanout[fanoutStart[i + 1] - 1].
+	 */
+	private final int[] fanoutStart;
+	private final int[] fanout;
+
+	/**
+	 * Outputs of leaf i are watched pins outputStart[i] up to
+	 * outputStart[i + 1] - 1.
+	 */
+	private final int[] outputStart;
+
+	/**
+	 * Watched pins checked at the beginning of each settle.
+	 */
+	private final int[] sources;
+
+	/**
+	 * Top-level outputs, and the pin connected directly to each one or null;
+	 * both are empty when the outputs are driven elsewhere.
+	 */
+	private final Pin[] outputs;
+	private final Pin[] drivers;
+
+	// work queue of dirty leaves, a binary heap of leaf indices
+	private final int[] heap;
+	private int heapSize;
+	private final boolean[] queued;
+
+	private boolean initialized;
+	private long evaluations;
+
+	/**
+	 * Constructs a scheduler for the given component.  The structure of the
+	 * component tree and its connections is captured here, so a new scheduler
+	 * is needed if components or connections are added later.
+	 * @param top the component to be evaluated
+	 */
+	public Scheduler(IComponent top) {
+		this(top, false);
+	}
+
+	/**
+	 * Constructs a scheduler for the given component, optionally treating
+	 * stateless compound components with at most 16 inputs as leaves whose
+	 * outputs are looked up in a truth table built on first use.  The pins
+	 * inside such a compound are then not updated.
+	 * @param top the component to be evaluated
+	 * @param cache whether to use truth tables for stateless compounds
+	 */
+	public Scheduler(IComponent top, boolean cache) {
+		this(top, Collections.singletonList(top), cache);
+	}
+
+	/**
+	 * Constructs a scheduler for part of a component: the given components,
+	 * fed by the parent's input pins.  Unless the only root is the parent
+	 * itself, the parent's outputs are left for the caller to drive.
+	 * @param parent component whose inputs are looked for at the start of each settle
+	 * @param roots components to be evaluated
+	 * @param cache whether to use truth tables for stateless compounds
+	 */
+	Scheduler(IComponent parent, List<IComponent> roots, boolean cache) {
+		Pin[] inputs = parent.inputs();
+		if (roots.size() == 1 && roots.get(0) == parent) {
+			outputs = parent.outputs();
+			// a cached parent is a leaf, so its outputs are set directly
+			drivers = cache && CachedSubtree.isCacheable(parent) ? new Pin[outputs.length] : findDrivers(parent);
+		} else {
+			outputs = new Pin[0];
+			drivers = new Pin[0];
+		}
+
+		ArrayList<IComponent> unordered = collectLeaves(roots, cache);
+		int n = unordered.size();
+
+		IdentityHashMap<Pin, Integer> leafInputs = new IdentityHashMap<>();
+		for (int i = 0; i < n; i++) {
+			for (Pin p : unordered.get(i).inputs()) {
+				leafInputs.put(p, i);
+			}
+		}
+
+		// fanout of each watched pin, using unordered leaf indices for now
+		ArrayList<Pin> pins = new ArrayList<>();
+		ArrayList<int[]> fanouts = new ArrayList<>();
+		int[] unorderedOutputStart = new int[n + 1];
+		for (Pin p : inputs) {
+			pins.add(p);
+			fanouts.add(reachedLeaves(p, leafInputs, n));
+		}
+		for (int i = 0; i < n; i++) {
+			unorderedOutputStart[i] = pins.size();
+			for (Pin p : unordered.get(i).outputs()) {
+				pins.add(p);
+				fanouts.add(reachedLeaves(p, leafInputs, n));
+			}
+		}
+		unorderedOutputStart[n] = pins.size();
+
+		int[] order = topologicalOrder(unordered, unorderedOutputStart, fanouts);
+		int[] position = new int[n];
+		for (int i = 0; i < n; i++) {
+			position[order[i]] = i;
+		}
+
+		// lay out everything by position in the topological order
+		leaves = new IComponent[n];
+		stateful = new boolean[n];
+		outputStart = new int[n + 1];
+		watched = new Pin[pins.size()];
+		int numInputs = inputs.length;
+		for (int i = 0; i < numInputs; i++) {
+			watched[i] = pins.get(i);
+		}
+		int slot = numInputs;
+		int[] slotFor = new int[pins.size()];
+		for (int i = 0; i < numInputs; i++) {
+			slotFor[i] = i;
+		}
+		int numSources = numInputs;
+		for (int i = 0; i < n; i++) {
+			int leaf = order[i];
+			leaves[i] = unordered.get(leaf);
+			stateful[i] = leaves[i] instanceof IStatefulComponent;
+			outputStart[i] = slot;
+			for (int k = unorderedOutputStart[leaf]; k < unorderedOutputStart[leaf + 1]; k++) {
+				slotFor[k] = slot;
+				watched[slot++] = pins.get(k);
+			}
+			if (stateful[i]) {
+				numSources += slot - outputStart[i];
+			}
+		}
+		outputStart[n] = slot;
+
+		int total = 0;
+		for (int[] f : fanouts) {
+			total += f.length;
+		}
+		fanoutStart = new int[watched.length + 1];
+		fanout = new int[total];
+		int[][] bySlot = new int[watched.length][];
+		for (int k = 0; k < fanouts.size(); k++) {
+			bySlot[slotFor[k]] = fanouts.get(k);
+		}
+		int next = 0;
+		for (int s = 0; s < watched.length; s++) {
+			fanoutStart[s] = next;
+			for (int leaf : bySlot[s]) {
+				fanout[next++] = position[leaf];
+			}
+		}
+		fanoutStart[watched.length] = next;
+
+		// sources feeding only stateful leaves need not be checked
+		int[] candidates = new int[numSources];
+		int count = 0;
+		for (int i = 0; i < numInputs; i++) {
+			candidates[count++] = i;
+		}
+		for (int i = 0; i < n; i++) {
+			if (stateful[i]) {
+				for (int s = outputStart[i]; s < outputStart[i + 1]; s++) {
+					candidates[count++] = s;
+				}
+			}
+		}
+		count = 0;
+		for (int s : candidates) {
+			boolean needed = false;
+			for (int k = fanoutStart[s]; k < fanoutStart[s + 1]; k++) {
+				needed |= !stateful[fanout[k]];
+			}
+			if (needed) {
+				candidates[count++] = s;
+			}
+		}
+		sources = Arrays.copyOf(candidates, count);
+
+		lastValue = new int[watched.length];
+		heap = new int[n];
+		queued = new boolean[n];
+	}
+
+	/**
+	 * Brings all outputs up to date with the current inputs and the
+	 * current state of the stateful components.  The first call
+	 * evaluates every leaf, and so does the first call after invalidate()
+	 * or after a pin driving a top-level output has been invalidated; other
+	 * calls evaluate only the leaves affected by changed values.
+	 * @throws IllegalStateException if the circuit has feedback that does not settle
+	 */
+	public void settle() {
+		for (Pin d : drivers) {
+			if (d != null && !d.isValid()) {
+				initialized = false;
+				break;
+			}
+		}
+		if (!initialized) {
+			for (int i = 0; i < leaves.length; i++) {
+				if (stateful[i]) {
+					leaves[i].propagate();
+				} else {
+					enqueue(i);
+				}
+			}
+			for (int s = 0; s < watched.length; s++) {
+				lastValue[s] = valueOf(watched[s]);
+			}
+			initialized = true;
+		}
+
+		for (int s : sources) {
+			checkForChange(s);
+		}
+
+		long limit = evaluations + (long) MAX_EVALUATIONS_PER_LEAF * Math.max(leaves.length, 1);
+		while (heapSize > 0) {
+			int i = dequeue();
+			leaves[i].propagate();
+			evaluations++;
+			if (evaluations > limit) {
+				throw new IllegalStateException("Circuit does not settle");
+			}
+			for (int s = outputStart[i]; s < outputStart[i + 1]; s++) {
+				checkForChange(s);
+			}
+		}
+		redrive(outputs, drivers);
+	}
+
+	/**
+	 * Makes the next settle evaluate every leaf, as the first one does.  Call
+	 * this when pins inside the component may have been invalidated.
+	 */
+	public void invalidate() {
+		initialized = false;
+	}
+
+	/**
+	 * Returns the total number of leaf evaluations performed so far.
+	 * @return number of evaluations
+	 */
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * Returns the number of leaf components.
+	 * @return number of leaves
+	 */
+	public int getLeafCount() {
+		return leaves.length;
+	}
+
+	/**
+	 * Marks the leaves fed by watched pin s as dirty if its value changed.
+	 */
+	private void checkForChange(int s) {
+		int value = valueOf(watched[s]);
+		if (value != lastValue[s]) {
+			lastValue[s] = value;
+			for (int k = fanoutStart[s]; k < fanoutStart[s + 1]; k++) {
+				int leaf = fanout[k];
+				if (!stateful[leaf]) {
+					enqueue(leaf);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the pin connected directly to each output of the parent: one of
+	 * its inputs or an output of one of its children, or null if there is none.
+	 */
+	static Pin[] findDrivers(IComponent parent) {
+		Pin[] outputs = parent.outputs();
+		Pin[] result = new Pin[outputs.length];
+		if (!(parent instanceof CompoundComponent)) {
+			return result;
+		}
+		IdentityHashMap<Pin, Integer> index = new IdentityHashMap<>();
+		for (int i = 0; i < outputs.length; i++) {
+			index.put(outputs[i], i);
+		}
+		ArrayList<Pin> candidates = new ArrayList<>(Arrays.asList(parent.inputs()));
+		for (IComponent c : ((CompoundComponent) parent).getComponents()) {
+			candidates.addAll(Arrays.asList(c.outputs()));
+		}
+		for (Pin d : candidates) {
+			for (Pin q : d.getConnections()) {
+				Integer i = index.get(q);
+				if (i != null && result[i] == null) {
+					result[i] = d;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Sets each output that is invalid or differs from its driver to the
+	 * driver's value.
+	 */
+	static void redrive(Pin[] outputs, Pin[] drivers) {
+		for (int i = 0; i < outputs.length; i++) {
+			Pin d = drivers[i];
+			if (d != null && d.isValid() && (!outputs[i].isValid() || outputs[i].getValue() != d.getValue())) {
+				outputs[i].set(d.getValue());
+			}
+		}
+	}
+
+	private static int valueOf(Pin p) {
+		return p.isValid() ? p.getValue() : -1;
+	}
+
+	private void enqueue(int leaf) {
+		if (queued[leaf]) {
+			return;
+		}
+		queued[leaf] = true;
+		int i = heapSize++;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap[parent] <= leaf) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = leaf;
+	}
+
+	private int dequeue() {
+		int result = heap[0];
+		int last = heap[--heapSize];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (heap[child] >= last) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		queued[result] = false;
+		return result;
+	}
+
+	/**
+	 * Returns the leaf components of the given tree, in the order found.
+	 */
+	static ArrayList<IComponent> collectLeaves(IComponent top) {
+		return collectLeaves(Collections.singletonList(top));
+	}
+
+	/**
+	 * Returns the leaf components of the given trees, in the order found.
+	 */
+	static ArrayList<IComponent> collectLeaves(List<IComponent> roots) {
+		return collectLeaves(roots, false);
+	}
+
+	/**
+	 * Returns the leaf components of the given trees, in the order found.
+	 * If cache is true, each outermost stateless compound small enough for
+	 * a truth table is returned as a single CachedSubtree leaf.
+	 */
+	static ArrayList<IComponent> collectLeaves(List<IComponent> roots, boolean cache) {
+		ArrayList<IComponent> result = new ArrayList<>();
+		IdentityHashMap<IComponent, Boolean> seen = new IdentityHashMap<>();
+		ArrayList<IComponent> stack = new ArrayList<>();
+		for (int i = roots.size() - 1; i >= 0; i--) {
+			stack.add(roots.get(i));
+		}
+		while (!stack.isEmpty()) {
+			IComponent c = stack.remove(stack.size() - 1);
+			if (seen.put(c, Boolean.TRUE) != null) {
+				continue;
+			}
+			if (cache && CachedSubtree.isCacheable(c)) {
+				result.add(new CachedSubtree((CompoundComponent) c));
+			} else if (c instanceof CompoundComponent) {
+				ArrayList<IComponent> children = ((CompoundComponent) c).getComponents();
+				for (int i = children.size() - 1; i >= 0; i--) {
+					stack.add(children.get(i));
+				}
+			} else {
+				result.add(c);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the indices of the leaves having an input that is the given pin
+	 * or is reached from it through connections, without duplicates.
+	 */
+	private static int[] reachedLeaves(Pin start, IdentityHashMap<Pin, Integer> leafInputs, int n) {
+		ArrayList<Integer> result = new ArrayList<>();
+		IdentityHashMap<Pin, Boolean> seen = new IdentityHashMap<>();
+		boolean[] found = new boolean[n];
+		ArrayList<Pin> stack = new ArrayList<>();
+		stack.add(start);
+		while (!stack.isEmpty()) {
+			Pin p = stack.remove(stack.size() - 1);
+			if (seen.put(p, Boolean.TRUE) != null) {
+				continue;
+			}
+			Integer leaf = leafInputs.get(p);
+			if (leaf != null && !found[leaf]) {
+				found[leaf] = true;
+				result.add(leaf);
+			}
+			stack.addAll(p.getConnections());
+		}
+		int[] ret = new int[result.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = result.get(i);
+		}
+		return ret;
+	}
+
+	/**
+	 * Orders the leaves so that every combinational leaf comes after the
+	 * leaves feeding it.  Edges out of stateful leaves are ignored.  Leaves
+	 * on a combinational cycle are placed at the end in their original order.
+	 */
+	private static int[] topologicalOrder(ArrayList<IComponent> leaves, int[] outputStart, ArrayList<int[]> fanouts) {
+		int n = leaves.size();
+		int[] inDegree = new int[n];
+		for (int i = 0; i < n; i++) {
+			if (leaves.get(i) instanceof IStatefulComponent) {
+				continue;
+			}
+			for (int k = outputStart[i]; k < outputStart[i + 1]; k++) {
+				for (int leaf : fanouts.get(k)) {
+					inDegree[leaf]++;
+				}
+			}
+		}
+
+		int[] order = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < n; i++) {
+			if (inDegree[i] == 0) {
+				order[tail++] = i;
+			}
+		}
+		while (head < tail) {
+			int i = order[head++];
+			if (leaves.get(i) instanceof IStatefulComponent) {
+				continue;
+			}
+			for (int k = outputStart[i]; k < outputStart[i + 1]; k++) {
+				for (int leaf : fanouts.get(k)) {
+					if (--inDegree[leaf] == 0) {
+						order[tail++] = leaf;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < n && tail < n; i++) {
+			if (inDegree[i] > 0) {
+				order[tail++] = i;
+			}
+		}
+		return order;
+	}
+}
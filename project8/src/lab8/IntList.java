@@ -1,14 +1,40 @@
 package lab8;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * A growable collection of ints based on a partially filled array.  
  * An IntList has a backing array containing the actual values, along 
  * with a variable 'size' indicating how many values are currently stored.
- * The initial capacity of the backing array is 10, and it doubles in size
- * whenever the capacity needs to be increased to add another element. 
+ * By default the initial capacity of the backing array is 10, and it doubles
+ * in size whenever the capacity needs to be increased to add another element;
+ * both can be chosen when the list is constructed.  Elements are moved with
+ * System.arraycopy, and bulk operations make room for all their elements
+ * at once.
  */
 public class IntList {
 
+   /**
+    * Default initial capacity of the backing array.
+    */
+   public static final int DEFAULT_CAPACITY = 10;
+   
+   /**
+    * Default factor by which the capacity grows.
+    */
+   public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+   
+   /**
+    * Largest capacity the backing array can have.
+    */
+   private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+   
+   /**
+    * Number of characters appendTo() collects before passing them on.
+    */
+   private static final int CHUNK = 8192;
+
    /**
     * The list of integers. It may contain more elements than are actually
     * filled.
@@ -20,13 +46,58 @@ public class IntList {
     */
    private int size;
    
+   /**
+    * Factor by which the capacity is multiplied when it needs to grow.
+    */
+   private final double growthFactor;
+   
    /**
     * Create a new, empty list of integers.  We create spots for 10 numbers,
     * and we'll grow the array if these all fill up.
     */
    public IntList() {
-      list = new int[10];
+      this(DEFAULT_CAPACITY, DEFAULT_GROWTH_FACTOR);
+   }
+   
+   /**
+    * Create a new, empty list of integers with the given initial capacity,
+    * which doubles when it needs to grow.
+    *
+    * @param initialCapacity
+    * Number of elements the list can hold before growing.
+    *
+    * @throws IllegalArgumentException
+    * If the capacity is negative.
+    */
+   public IntList(int initialCapacity) {
+      this(initialCapacity, DEFAULT_GROWTH_FACTOR);
+   }
+   
+   /**
+    * Create a new, empty list of integers with the given initial capacity
+    * and growth policy.  When the list needs to grow, its capacity is
+    * multiplied by the growth factor, or increased to the number of elements
+    * needed if that is more.
+    *
+    * @param initialCapacity
+    * Number of elements the list can hold before growing.
+    *
+    * @param growthFactor
+    * Factor by which the capacity is multiplied, greater than 1.
+    *
+    * @throws IllegalArgumentException
+    * If the capacity is negative or the factor is not greater than 1.
+    */
+   public IntList(int initialCapacity, double growthFactor) {
+      if (initialCapacity < 0 || initialCapacity > MAX_CAPACITY) {
+         throw new IllegalArgumentException("Invalid capacity: " + initialCapacity);
+      }
+      if (!(growthFactor > 1.0)) {
+         throw new IllegalArgumentException("Growth factor must be greater than 1: " + growthFactor);
+      }
+      list = new int[initialCapacity];
       size = 0;
+      this.growthFactor = growthFactor;
    }
    
    /**
@@ -65,7 +136,7 @@ public class IntList {
     */
    public void add(int newItem) {
       if (size == list.length) {
-         grow();
+         grow(size + 1);
       }
       list[size] = newItem;
       ++size;
@@ -90,28 +161,144 @@ public class IntList {
        throw new ArrayIndexOutOfBoundsException();
      }
      if (size == list.length) {
-       grow();
+       grow(size + 1);
      }
      
      // shift elements to the right
-     for (int i = size; i > index; i -= 1) {
-       list[i] = list[i - 1];
-     }
+     System.arraycopy(list, index, list, index + 1, size - index);
      list[index] = newItem;
      ++size;
    }
    
    /**
-    * Double the capacity of the array. Automatically creates a new
-    * array twice the size of the current and copies all existing
-    * list data over.
+    * Adds all the given ints to the end of the list, growing it at most once.
+    *
+    * @param values
+    * Ints to add.
     */
-   private void grow() {
-      int[] tmpList = new int[list.length * 2];
-      for (int i = 0; i < size; ++i) {
-         tmpList[i] = list[i];
+   public void addAll(int[] values) {
+      addAll(values, 0, values.length);
+   }
+   
+   /**
+    * Adds a range of the given ints to the end of the list, growing it at
+    * most once.
+    *
+    * @param values
+    * Array containing the ints to add.
+    *
+    * @param offset
+    * Index in the array of the first int to add.
+    *
+    * @param length
+    * Number of ints to add.
+    *
+    * @throws ArrayIndexOutOfBoundsException
+    * If the range does not fit in the array.
+    */
+   public void addAll(int[] values, int offset, int length) {
+      checkRange(values, offset, length);
+      reserve(length);
+      System.arraycopy(values, offset, list, size, length);
+      size += length;
+   }
+   
+   /**
+    * Inserts all the given ints in the list, the first at the specified
+    * index. Existing elements from that index on are shifted to the right
+    * once, by the number of new elements.
+    *
+    * @param index
+    * Index for the first new item.
+    *
+    * @param values
+    * Ints to insert.
+    *
+    * @throws ArrayIndexOutOfBoundsException
+    * If given index is greater than the current size.
+    */
+   public void insertAll(int index, int[] values) {
+      if (index < 0 || index > size) {
+         throw new ArrayIndexOutOfBoundsException();
+      }
+      int length = values.length;
+      reserve(length);
+      System.arraycopy(list, index, list, index + length, size - index);
+      System.arraycopy(values, 0, list, index, length);
+      size += length;
+   }
+   
+   /**
+    * Removes the elements from index from, inclusive, to index to,
+    * exclusive. Later elements are shifted to the left.
+    *
+    * @param from
+    * Index of the first element to remove.
+    *
+    * @param to
+    * Index after the last element to remove.
+    *
+    * @throws ArrayIndexOutOfBoundsException
+    * If the range is not within the list.
+    */
+   public void removeRange(int from, int to) {
+      if (from < 0 || to > size || from > to) {
+         throw new ArrayIndexOutOfBoundsException();
+      }
+      System.arraycopy(list, to, list, from, size - to);
+      size -= to - from;
+   }
+   
+   /**
+    * Makes sure the list can hold the given number of elements without
+    * growing again.
+    *
+    * @param minCapacity
+    * Number of elements the list should be able to hold.
+    */
+   public void ensureCapacity(int minCapacity) {
+      if (minCapacity > list.length) {
+         grow(minCapacity);
+      }
+   }
+   
+   /**
+    * Makes room for the given number of elements after the current ones,
+    * computing the capacity needed without overflow.
+    */
+   private void reserve(int length) {
+      if (length > list.length - size) {
+         grow((long) size + length);
+      }
+   }
+   
+   /**
+    * Grow the capacity of the array according to the growth factor, or to
+    * the given capacity if that is larger. Creates a new array and copies
+    * all existing list data over.
+    *
+    * @param minCapacity
+    * Number of elements the array must be able to hold.
+    *
+    * @throws OutOfMemoryError
+    * If the capacity needed exceeds the largest array size.
+    */
+   private void grow(long minCapacity) {
+      if (minCapacity < 0 || minCapacity > MAX_CAPACITY) {
+         throw new OutOfMemoryError("Required capacity too large");
+      }
+      long grown = (long) Math.ceil(list.length * growthFactor);
+      int newCapacity = (int) Math.min(MAX_CAPACITY, Math.max(grown, minCapacity));
+      list = Arrays.copyOf(list, newCapacity);
+   }
+   
+   /**
+    * Checks that a range of an array is valid.
+    */
+   private static void checkRange(int[] values, int offset, int length) {
+      if (offset < 0 || length < 0 || offset > values.length - length) {
+         throw new ArrayIndexOutOfBoundsException();
       }
-      list = tmpList;
    }
    
    /**
@@ -154,14 +341,44 @@ public class IntList {
     * Comma-separated string of elements.
     */
    public String toString() {
-      String s = "[";
-      if (size > 0) {
-         s += list[0];
-         for (int i = 1; i < size; ++i) {
-            s += ", " + list[i];
+      // computed in long and clamped, since 4 * size can overflow an int
+      StringBuilder sb = new StringBuilder((int) Math.min(2 + size * 4L, MAX_CAPACITY));
+      sb.append('[');
+      for (int i = 0; i < size; ++i) {
+         if (i > 0) {
+            sb.append(", ");
+         }
+         sb.append(list[i]);
+      }
+      sb.append(']');
+      return sb.toString();
+   }
+   
+   /**
+    * Write the string representation of the list, as returned by
+    * toString(), to the given destination. The text is passed on in
+    * chunks, so the whole string is never built.
+    *
+    * @param out
+    * Destination for the text.
+    *
+    * @throws IOException
+    * If the destination cannot be written.
+    */
+   public void appendTo(Appendable out) throws IOException {
+      StringBuilder sb = new StringBuilder(CHUNK + 16);
+      sb.append('[');
+      for (int i = 0; i < size; ++i) {
+         if (i > 0) {
+            sb.append(", ");
+         }
+         sb.append(list[i]);
+         if (sb.length() >= CHUNK) {
+            out.append(sb);
+            sb.setLength(0);
          }
       }
-      s += "]";
-      return s;
+      sb.append(']');
+      out.append(sb);
    }
 }
\ No newline at end of file
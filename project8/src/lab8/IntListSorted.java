@@ -1,5 +1,7 @@
 package lab8;
 
+import java.util.Arrays;
+
 /**
  * Subclass of IntList that guarantees that the elements are always
  * in ascending order.
@@ -49,6 +51,55 @@ public class IntListSorted extends IntList
     this.add(newItem);
   }
   
+  /**
+   * Adds the given range of items to this list, merging them in so that
+   * the list remains sorted.
+   */
+  @Override
+  public void addAll(int[] values, int offset, int length)
+  {
+    if (offset < 0 || length < 0 || offset > values.length - length)
+    {
+      throw new ArrayIndexOutOfBoundsException();
+    }
+    int[] added = Arrays.copyOfRange(values, offset, offset + length);
+    Arrays.sort(added);
+    int n = size();
+    if (n == 0 || length == 0 || get(n - 1) <= added[0])
+    {
+      super.addAll(added, 0, length);
+      return;
+    }
+    
+    // merge the old elements with the new ones, then replace the old ones
+    int[] merged = new int[n + length];
+    int i = 0;
+    int j = 0;
+    for (int k = 0; k < merged.length; ++k)
+    {
+      if (j == length || (i < n && get(i) <= added[j]))
+      {
+        merged[k] = get(i++);
+      }
+      else
+      {
+        merged[k] = added[j++];
+      }
+    }
+    removeRange(0, n);
+    super.addAll(merged, 0, merged.length);
+  }
+  
+  /**
+   * Inserts the given items in this list, merging them in so that the
+   * list remains sorted.  (The given index is ignored.)
+   */
+  @Override
+  public void insertAll(int index, int[] values)
+  {
+    this.addAll(values, 0, values.length);
+  }
+  
   public int getMedian() {
 		int median = 0;
 		int mid = size()/2;